@@ -0,0 +1,138 @@
+package call.master.audiohusbandwife;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes mono float PCM to AAC-LC in an MP4 (.m4a) container with {@link MediaCodec} and
+ * {@link MediaMuxer}.
+ */
+@RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN_MR2)
+public class AacEncoder {
+
+    private static final long TIMEOUT_US = 10000;
+
+    private final int mSampleRate;
+    private final MediaCodec mCodec;
+    private final MediaMuxer mMuxer;
+    private final MediaCodec.BufferInfo mInfo = new MediaCodec.BufferInfo();
+
+    private ByteBuffer[] mInputBuffers;
+    private ByteBuffer[] mOutputBuffers;
+    private int mTrack = -1;
+    private long mSamplesWritten;
+    private boolean mReleased;
+
+    public AacEncoder(File output, int sampleRate, int bitRate) throws IOException {
+        mSampleRate = sampleRate;
+        MediaFormat format = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_AAC, sampleRate, 1);
+        format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
+
+        mCodec = MediaCodec.createEncoderByType(MediaFormat.MIMETYPE_AUDIO_AAC);
+        mCodec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        mCodec.start();
+        mInputBuffers = mCodec.getInputBuffers();
+        mOutputBuffers = mCodec.getOutputBuffers();
+        mMuxer = new MediaMuxer(output.getPath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+    }
+
+    public void write(float[] samples, int offset, int length) {
+        int written = 0;
+        while (written < length) {
+            int index = mCodec.dequeueInputBuffer(TIMEOUT_US);
+            if (index < 0) {
+                drain(false);
+                continue;
+            }
+            ByteBuffer buffer = mInputBuffers[index];
+            buffer.clear();
+            int count = Math.min(length - written, buffer.remaining() / 2);
+            for (int i = 0; i < count; i++) {
+                float sample = samples[offset + written + i];
+                if (sample > 1f) {
+                    sample = 1f;
+                } else if (sample < -1f) {
+                    sample = -1f;
+                }
+                short value = (short) (sample * 32767f);
+                // MediaCodec expects native (little endian) order
+                buffer.put((byte) value);
+                buffer.put((byte) (value >> 8));
+            }
+            mCodec.queueInputBuffer(index, 0, count * 2, presentationTimeUs(), 0);
+            mSamplesWritten += count;
+            written += count;
+            drain(false);
+        }
+    }
+
+    /***
+     * Flushes the encoder and finalizes the file.
+     ****/
+    public void finish() {
+        int index;
+        do {
+            index = mCodec.dequeueInputBuffer(TIMEOUT_US);
+            if (index < 0) {
+                drain(false);
+            }
+        } while (index < 0);
+        mCodec.queueInputBuffer(index, 0, 0, presentationTimeUs(), MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+        drain(true);
+        release();
+    }
+
+    public void release() {
+        if (mReleased) {
+            return;
+        }
+        mReleased = true;
+        mCodec.stop();
+        mCodec.release();
+        if (mTrack >= 0) {
+            mMuxer.stop();
+        }
+        mMuxer.release();
+    }
+
+    private long presentationTimeUs() {
+        return mSamplesWritten * 1000000L / mSampleRate;
+    }
+
+    private void drain(boolean endOfStream) {
+        while (true) {
+            int index = mCodec.dequeueOutputBuffer(mInfo, endOfStream ? TIMEOUT_US : 0);
+            if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                if (!endOfStream) {
+                    return;
+                }
+            } else if (index == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                mOutputBuffers = mCodec.getOutputBuffers();
+            } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                mTrack = mMuxer.addTrack(mCodec.getOutputFormat());
+                mMuxer.start();
+            } else if (index >= 0) {
+                ByteBuffer buffer = mOutputBuffers[index];
+                boolean config = (mInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+                if (!config && mInfo.size > 0 && mTrack >= 0) {
+                    buffer.position(mInfo.offset);
+                    buffer.limit(mInfo.offset + mInfo.size);
+                    mMuxer.writeSampleData(mTrack, buffer, mInfo);
+                }
+                mCodec.releaseOutputBuffer(index, false);
+                if ((mInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package call.master.audiohusbandwife;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Directory of {@link CacheFile}s, one per remote resource, kept under a disk budget by evicting
+ * the least recently opened files. Files that are currently open are never evicted.
+ * <p>
+ * Opening a resource that is already open returns the same {@link CachingDataSource}, so a file is
+ * only ever downloaded and indexed by one instance. Every {@link #open} must be balanced by exactly
+ * one {@link CachingDataSource#close()}; the download stops when the last reference is closed, and
+ * the index is written in the background once the downloader has exited, so closing never waits
+ * on the network.
+ */
+public class AudioCache {
+
+    private static final String TAG = AudioCache.class.getSimpleName();
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+
+    // access ordered: least recently used first
+    private final LinkedHashMap<String, File> mEntries = new LinkedHashMap<String, File>(16, 0.75f, true);
+    private final HashMap<String, CachingDataSource> mOpen = new HashMap<String, CachingDataSource>();
+    private final ArrayList<Thread> mClosers = new ArrayList<Thread>();
+
+    public AudioCache(File directory, long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create cache directory " + directory);
+        }
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            // rebuild the LRU order from the previous session
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File a, File b) {
+                    long diff = a.lastModified() - b.lastModified();
+                    return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+                }
+            });
+            for (File file : files) {
+                if (!file.getName().endsWith(".index")) {
+                    mEntries.put(file.getName(), file);
+                }
+            }
+        }
+    }
+
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /***
+     * Opens a caching data source for {@code url}, downloaded over HTTP with range requests.
+     ****/
+    public CachingDataSource open(String url) throws IOException {
+        return open(url, new HttpRangeFetcher(url));
+    }
+
+    /***
+     * Opens a caching data source for the resource identified by {@code key}. If it is already open
+     * the existing source is shared and {@code fetcher} is not used.
+     ****/
+    public synchronized CachingDataSource open(String key, RangeFetcher fetcher) throws IOException {
+        String name = fileNameFor(key);
+        File file = new File(mDirectory, name);
+        mEntries.put(name, file);
+        file.setLastModified(System.currentTimeMillis());
+
+        CachingDataSource source = mOpen.get(name);
+        if (source == null) {
+            source = new CachingDataSource(fetcher, new CacheFile(file), this);
+            mOpen.put(name, source);
+        } else if (source.mReferences == 0) {
+            // released but still shutting down, keep using it rather than racing its index write
+            source.reopen();
+        }
+        source.mReferences++;
+        return source;
+    }
+
+    /***
+     * Drops one reference to {@code source}. The last one stops the download right away and leaves
+     * waiting for the downloader and writing the index to a background thread; the source stays
+     * registered until then, so an {@link #open} of the same key meanwhile revives it instead of
+     * loading a stale index.
+     ****/
+    synchronized void release(final CachingDataSource source) {
+        if (--source.mReferences > 0) {
+            return;
+        }
+        source.stopDownload();
+        final int generation = ++source.mGeneration;
+        Thread closer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    source.awaitDownloader();
+                    finishRelease(source, generation);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    synchronized (AudioCache.this) {
+                        mClosers.remove(Thread.currentThread());
+                        AudioCache.this.notifyAll();
+                    }
+                }
+            }
+        }, TAG);
+        closer.setDaemon(true);
+        mClosers.add(closer);
+        closer.start();
+    }
+
+    private synchronized void finishRelease(CachingDataSource source, int generation) {
+        if (source.mReferences > 0 || source.mGeneration != generation) {
+            // opened again while stopping, a later release finishes the job
+            return;
+        }
+        CacheFile cacheFile = source.getCacheFile();
+        try {
+            cacheFile.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        mOpen.remove(cacheFile.getFile().getName());
+        trim();
+    }
+
+    /***
+     * Waits until every released source has written its index and left the cache.
+     ****/
+    synchronized void awaitReleased() throws InterruptedException {
+        while (!mClosers.isEmpty()) {
+            wait();
+        }
+    }
+
+    /***
+     * Bytes the cache currently takes on disk (allocated bytes of sparse files are not known, the
+     * logical length is counted).
+     ****/
+    public synchronized long size() {
+        long total = 0;
+        for (File file : mEntries.values()) {
+            total += file.length();
+        }
+        return total;
+    }
+
+    /***
+     * Evicts least recently used, closed entries until the cache fits the budget.
+     ****/
+    public synchronized void trim() {
+        long total = size();
+        Iterator<Map.Entry<String, File>> iterator = mEntries.entrySet().iterator();
+        while (total > mMaxBytes && iterator.hasNext()) {
+            Map.Entry<String, File> entry = iterator.next();
+            if (mOpen.containsKey(entry.getKey())) {
+                continue;
+            }
+            File file = entry.getValue();
+            total -= file.length();
+            file.delete();
+            CacheFile.indexFileOf(file).delete();
+            iterator.remove();
+        }
+    }
+
+    static String fileNameFor(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(key.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
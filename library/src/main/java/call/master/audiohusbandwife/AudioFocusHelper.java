@@ -0,0 +1,141 @@
+package call.master.audiohusbandwife;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.media.AudioAttributes;
+import android.media.AudioFocusRequest;
+import android.media.AudioManager;
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+import android.util.Log;
+
+/**
+ * Requests and abandons audio focus and listens for {@link AudioManager#ACTION_AUDIO_BECOMING_NOISY}
+ * while focus is held, forwarding everything to an {@link AudioFocusPolicy}.
+ */
+class AudioFocusHelper {
+
+    private static final String TAG = AudioFocusHelper.class.getSimpleName();
+
+    private final Context mContext;
+    private final AudioManager mAudioManager;
+    private final AudioFocusPolicy mPolicy;
+
+    private AudioFocusRequest mFocusRequest;
+    private boolean mFocusRequestPausesWhenDucked;
+    // a focus request is registered with the system, it may currently be lost transiently
+    private boolean mFocusRequested;
+    private boolean mNoisyReceiverRegistered;
+
+    AudioFocusHelper(Context context, AudioFocusPolicy policy) {
+        mContext = context.getApplicationContext();
+        mAudioManager = (AudioManager) mContext.getSystemService(Context.AUDIO_SERVICE);
+        mPolicy = policy;
+    }
+
+    private final AudioManager.OnAudioFocusChangeListener mFocusChangeListener = new AudioManager.OnAudioFocusChangeListener() {
+        @Override
+        public void onAudioFocusChange(int focusChange) {
+            Log.d(TAG, "onAudioFocusChange() called with: focusChange = [" + focusChange + "]");
+            AudioFocusPolicy.FocusChange change;
+            switch (focusChange) {
+                case AudioManager.AUDIOFOCUS_GAIN:
+                    change = AudioFocusPolicy.FocusChange.GAIN;
+                    break;
+                case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT:
+                    change = AudioFocusPolicy.FocusChange.LOSS_TRANSIENT;
+                    break;
+                case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK:
+                    change = AudioFocusPolicy.FocusChange.LOSS_TRANSIENT_CAN_DUCK;
+                    break;
+                case AudioManager.AUDIOFOCUS_LOSS:
+                    change = AudioFocusPolicy.FocusChange.LOSS;
+                    break;
+                default:
+                    return;
+            }
+            if (mPolicy.onFocusChange(change)) {
+                abandonFocus();
+            }
+        }
+    };
+
+    private final BroadcastReceiver mNoisyReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (AudioManager.ACTION_AUDIO_BECOMING_NOISY.equals(intent.getAction())) {
+                mPolicy.onBecomingNoisy();
+            }
+        }
+    };
+
+    /***
+     * Asks for focus on every call, since it may have been lost transiently or taken by a call in
+     * the meantime.
+     *
+     * @return true if focus was granted and playback may start
+     ****/
+    boolean requestFocus() {
+        int result;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            result = mAudioManager.requestAudioFocus(getFocusRequest());
+        } else {
+            result = mAudioManager.requestAudioFocus(mFocusChangeListener,
+                    AudioManager.STREAM_MUSIC, AudioManager.AUDIOFOCUS_GAIN);
+        }
+        mFocusRequested = true;
+        boolean granted = result == AudioManager.AUDIOFOCUS_REQUEST_GRANTED;
+        if (granted && !mNoisyReceiverRegistered) {
+            mContext.registerReceiver(mNoisyReceiver, new IntentFilter(AudioManager.ACTION_AUDIO_BECOMING_NOISY));
+            mNoisyReceiverRegistered = true;
+        }
+        return granted;
+    }
+
+    void abandonFocus() {
+        if (mNoisyReceiverRegistered) {
+            mContext.unregisterReceiver(mNoisyReceiver);
+            mNoisyReceiverRegistered = false;
+        }
+        if (!mFocusRequested) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            mAudioManager.abandonAudioFocusRequest(mFocusRequest);
+        } else {
+            mAudioManager.abandonAudioFocus(mFocusChangeListener);
+        }
+        mFocusRequested = false;
+    }
+
+    /***
+     * With {@link AudioFocusPolicy.DuckMode#PAUSE} the system has to report ducking instead of
+     * lowering the volume itself, so the request is rebuilt whenever the duck mode changes.
+     ****/
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    private AudioFocusRequest getFocusRequest() {
+        boolean pausesWhenDucked = mPolicy.getDuckMode() == AudioFocusPolicy.DuckMode.PAUSE;
+        if (mFocusRequest == null || mFocusRequestPausesWhenDucked != pausesWhenDucked) {
+            if (mFocusRequest != null && mFocusRequested) {
+                mAudioManager.abandonAudioFocusRequest(mFocusRequest);
+            }
+            mFocusRequest = new AudioFocusRequest.Builder(AudioManager.AUDIOFOCUS_GAIN)
+                    .setAudioAttributes(getAudioAttributes())
+                    .setOnAudioFocusChangeListener(mFocusChangeListener)
+                    .setWillPauseWhenDucked(pausesWhenDucked)
+                    .build();
+            mFocusRequestPausesWhenDucked = pausesWhenDucked;
+        }
+        return mFocusRequest;
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    static AudioAttributes getAudioAttributes() {
+        return new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_MEDIA)
+                .setContentType(AudioAttributes.CONTENT_TYPE_SPEECH)
+                .build();
+    }
+}
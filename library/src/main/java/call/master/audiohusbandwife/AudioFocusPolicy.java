@@ -0,0 +1,158 @@
+package call.master.audiohusbandwife;
+
+/**
+ * Decides what playback does when audio focus changes or the output becomes noisy (headphones
+ * unplugged). Pure state machine: the Android side translates {@code AudioManager} callbacks into
+ * {@link FocusChange}s and the policy drives a {@link Player}.
+ * <p>
+ * A transient loss only pauses the player, it is never stopped or released, so regaining focus
+ * resumes instantly without a new {@code prepare()}.
+ */
+public class AudioFocusPolicy {
+
+    public enum FocusChange {GAIN, LOSS, LOSS_TRANSIENT, LOSS_TRANSIENT_CAN_DUCK}
+
+    /***
+     * What to do on {@link FocusChange#LOSS_TRANSIENT_CAN_DUCK}. Speech is hard to follow under
+     * another sound, so voice notes may prefer to pause.
+     ****/
+    public enum DuckMode {DUCK, PAUSE}
+
+    public enum STATE {IDLE, PLAYING, DUCKED, PAUSED_TRANSIENT, PAUSED}
+
+    public interface Player {
+        public void pausePlayback();
+
+        public void resumePlayback();
+
+        public void setVolume(float volume);
+    }
+
+    private static final float DEFAULT_DUCK_VOLUME = 0.2f;
+
+    private final Player mPlayer;
+    private DuckMode mDuckMode = DuckMode.DUCK;
+    private float mDuckVolume = DEFAULT_DUCK_VOLUME;
+    private STATE mState = STATE.IDLE;
+
+    public AudioFocusPolicy(Player player) {
+        if (player == null) {
+            throw new IllegalArgumentException("Player cannot be null");
+        }
+        mPlayer = player;
+    }
+
+    public AudioFocusPolicy setDuckMode(DuckMode duckMode) {
+        this.mDuckMode = duckMode;
+        return this;
+    }
+
+    public DuckMode getDuckMode() {
+        return mDuckMode;
+    }
+
+    public AudioFocusPolicy setDuckVolume(float duckVolume) {
+        if (duckVolume < 0 || duckVolume > 1) {
+            throw new IllegalArgumentException("Duck volume must be between 0 and 1");
+        }
+        this.mDuckVolume = duckVolume;
+        return this;
+    }
+
+    public STATE getState() {
+        return mState;
+    }
+
+    /***
+     * The user started playback and focus was granted.
+     ****/
+    public void onPlay() {
+        setState(STATE.PLAYING);
+    }
+
+    /***
+     * The user paused. Playback will not resume on its own after this.
+     ****/
+    public void onPause() {
+        if (mState != STATE.IDLE) {
+            setState(STATE.PAUSED);
+        }
+    }
+
+    /***
+     * Playback completed or the player was released.
+     ****/
+    public void onStop() {
+        setState(STATE.IDLE);
+    }
+
+    /***
+     * Every way out of {@link STATE#DUCKED} restores full volume, otherwise a pause or a permanent
+     * loss while ducked would leave every later play at the duck volume. Called after pausing so
+     * nothing is heard at full volume on the way.
+     ****/
+    private void setState(STATE state) {
+        if (mState == STATE.DUCKED && state != STATE.DUCKED) {
+            mPlayer.setVolume(1f);
+        }
+        mState = state;
+    }
+
+    /***
+     * @return true if focus is gone for good and should be abandoned
+     ****/
+    public boolean onFocusChange(FocusChange change) {
+        switch (change) {
+            case GAIN:
+                if (mState == STATE.DUCKED) {
+                    setState(STATE.PLAYING);
+                } else if (mState == STATE.PAUSED_TRANSIENT) {
+                    mPlayer.resumePlayback();
+                    setState(STATE.PLAYING);
+                }
+                return false;
+
+            case LOSS_TRANSIENT_CAN_DUCK:
+                if (mState == STATE.PLAYING) {
+                    if (mDuckMode == DuckMode.DUCK) {
+                        mPlayer.setVolume(mDuckVolume);
+                        setState(STATE.DUCKED);
+                    } else {
+                        mPlayer.pausePlayback();
+                        setState(STATE.PAUSED_TRANSIENT);
+                    }
+                }
+                return false;
+
+            case LOSS_TRANSIENT:
+                if (mState == STATE.PLAYING || mState == STATE.DUCKED) {
+                    mPlayer.pausePlayback();
+                    setState(STATE.PAUSED_TRANSIENT);
+                }
+                return false;
+
+            case LOSS:
+            default:
+                if (mState == STATE.PLAYING || mState == STATE.DUCKED) {
+                    mPlayer.pausePlayback();
+                }
+                if (mState != STATE.IDLE) {
+                    setState(STATE.PAUSED);
+                }
+                return true;
+        }
+    }
+
+    /***
+     * Audio is about to come out of the speaker (headphones unplugged, BT disconnected).
+     ****/
+    public void onBecomingNoisy() {
+        if (mState == STATE.PLAYING || mState == STATE.DUCKED) {
+            mPlayer.pausePlayback();
+        }
+        if (mState != STATE.IDLE) {
+            // also cancels a pending resume after a transient loss
+            setState(STATE.PAUSED);
+        }
+    }
+}
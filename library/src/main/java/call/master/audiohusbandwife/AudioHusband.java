@@ -6,13 +6,13 @@ import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
-import android.support.annotation.RequiresApi;
 import android.util.Log;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Created by Pankaj Sharma on 12/6/17.
@@ -20,7 +20,7 @@ import java.util.TimerTask;
 
 public class AudioHusband {
     private static final String TAG = AudioHusband.class.getSimpleName();
-    private static boolean NOUGAT_SUPPORT = false;
+    private static boolean PAUSE_SUPPORT = false;
 
     private static AudioHusband mAudioHusband;
 
@@ -50,17 +50,23 @@ public class AudioHusband {
         this.context = context;
     }
 
+    /***
+     * Whether {@link MediaRecorder} can pause, i.e. API 24 and up. Recordings made through
+     * {@link #setAudioProcessor(AudioProcessor)} can pause on every API level.
+     ****/
     public boolean isPauseFeatureSupported() {
         return Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
     }
 
     public AudioHusband setPauseSupport(boolean isPauseSupport) {
-        if (isPauseFeatureSupported()) {
-            NOUGAT_SUPPORT = isPauseSupport;
-        }
+        PAUSE_SUPPORT = isPauseSupport;
         return this;
     }
 
+    private boolean canPause() {
+        return PAUSE_SUPPORT && (mPcmRecorder != null || isPauseFeatureSupported());
+    }
+
     public AudioHusband setFile(File mFile) {
         this.mFile = mFile;
         if (mFile != null && mFile.exists() == false) {
@@ -74,20 +80,123 @@ public class AudioHusband {
     }
 
     private MediaRecorder mRecorder = null;
+    private PcmRecorder mPcmRecorder = null;
+
+    private AudioProcessor mAudioProcessor;
+
+    /***
+     * Sets the DSP chain applied to the captured audio, e.g. an {@link AudioProcessorChain} of
+     * {@link HighPassFilter}, {@link NoiseSuppressor} and {@link AutomaticGainControl}. While a
+     * processor is set the file is recorded as 16 bit mono WAV instead of AMR-NB, still under the
+     * name passed to {@link #setFile(File)}, so give it a .wav extension. Pass null to go back to the
+     * plain encoder.
+     ****/
+    public AudioHusband setAudioProcessor(AudioProcessor audioProcessor) {
+        this.mAudioProcessor = audioProcessor;
+        return this;
+    }
+
+    private static final int LOUDNESS_QUEUE_CAPACITY = 8;
+
+    private LoudnessMeter mLoudnessMeter;
+    private AudioProcessingQueue mLoudnessQueue;
+
+    /***
+     * Measures the loudness of every recording and stores it next to the file as
+     * {@link LoudnessMetadata}, which {@link AudioWife} uses to play it at a consistent level. The
+     * recording format does not change: with {@link #setAudioProcessor(AudioProcessor)} the meter
+     * runs live after that processor, otherwise the encoded file is scanned in the background once
+     * it stops (API 16 and up, on the {@link #setAutoTranscode} queue if there is one).
+     ****/
+    public AudioHusband setLoudnessMetering(boolean enabled) {
+        this.mLoudnessMeter = enabled ? new LoudnessMeter() : null;
+        return this;
+    }
+
+    private AudioProcessingQueue mProcessingQueue;
+    private AudioProcessingQueue.JobListener mProcessingListener;
+
+    /***
+     * Transcodes every finished recording to a normalized 16 kHz AAC .m4a next to it (see
+     * {@link AudioTranscodeTask}) as soon as it stops. When the queue has no idle worker the job is
+     * queued at {@link AudioProcessingQueue#PRIORITY_LOW} so it does not delay other work. Requires
+     * API 18, ignored below. Pass null to turn off.
+     ****/
+    public AudioHusband setAutoTranscode(AudioProcessingQueue queue, AudioProcessingQueue.JobListener listener) {
+        this.mProcessingQueue = queue;
+        this.mProcessingListener = listener;
+        return this;
+    }
+
+    private void submitTranscode() {
+        if (mProcessingQueue == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2
+                || mFile == null || mFile.length() == 0) {
+            return;
+        }
+        // a busy queue defers the transcode behind other work instead of dropping it
+        int priority = mProcessingQueue.hasHeadroom()
+                ? AudioProcessingQueue.PRIORITY_NORMAL : AudioProcessingQueue.PRIORITY_LOW;
+        String name = mFile.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        File output = new File(mFile.getParentFile(), base + (name.endsWith(".m4a") ? ".processed.m4a" : ".m4a"));
+        try {
+            mProcessingQueue.submit(new AudioTranscodeTask(context, mFile, output), priority, mProcessingListener);
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "submitTranscode() rejected", e);
+        }
+    }
+
+    private void writeLoudness() {
+        if (mLoudnessMeter == null) {
+            return;
+        }
+        try {
+            mLoudnessMeter.getMetadata().write(mFile);
+        } catch (IOException e) {
+            Log.w(TAG, "writeLoudness() failed", e);
+        }
+    }
+
+    /***
+     * Measures an encoded recording by decoding it, since {@link MediaRecorder} gives no access to
+     * the samples.
+     ****/
+    private void scanLoudness() {
+        if (mLoudnessMeter == null || mFile == null || mFile.length() == 0) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            Log.w(TAG, "scanLoudness() skipped, decoding needs API 16");
+            return;
+        }
+        AudioProcessingQueue queue = mProcessingQueue;
+        if (queue == null) {
+            if (mLoudnessQueue == null) {
+                mLoudnessQueue = new AudioProcessingQueue(1, LOUDNESS_QUEUE_CAPACITY);
+            }
+            queue = mLoudnessQueue;
+        }
+        try {
+            queue.submit(new LoudnessScanTask(context, mFile), AudioProcessingQueue.PRIORITY_NORMAL, null);
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "scanLoudness() rejected", e);
+        }
+    }
 
     private void onRecord(boolean start) {
         if (start) {
-            if (mRecorder == null) {
+            if (mRecorder == null && mPcmRecorder == null) {
                 startRecording();
             } else {
-                if (NOUGAT_SUPPORT && isPauseFeatureSupported()) {
+                if (canPause()) {
                     resumeRecording();
                 } else {
                     startRecording();
                 }
             }
         } else {
-            if (NOUGAT_SUPPORT && isPauseFeatureSupported()) {
+            if (canPause()) {
                 pauseRecording();
             } else {
                 stopRecording();
@@ -98,6 +207,10 @@ public class AudioHusband {
 
     public void startRecording() {
         Log.d(TAG, "startRecording() called");
+        if (mAudioProcessor != null) {
+            startPcmRecording();
+            return;
+        }
         try {
             recorderSecondsElapsed = 0;
             mRecorder = new MediaRecorder();
@@ -119,10 +232,38 @@ public class AudioHusband {
         }
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.N)
+    private void startPcmRecording() {
+        recorderSecondsElapsed = 0;
+        AudioProcessor processor = mAudioProcessor;
+        if (mLoudnessMeter != null) {
+            AudioProcessorChain chain = new AudioProcessorChain();
+            if (mAudioProcessor != null) {
+                chain.add(mAudioProcessor);
+            }
+            processor = chain.add(mLoudnessMeter);
+        }
+        mPcmRecorder = new PcmRecorder(mFile, processor);
+        try {
+            mPcmRecorder.start();
+        } catch (IOException e) {
+            e.printStackTrace();
+            Log.e(TAG, "start() failed");
+            mPcmRecorder = null;
+            return;
+        }
+        startTimer();
+        if (mCallback != null) {
+            mCallback.onRecordingStarts();
+        }
+    }
+
     private void resumeRecording() {
         Log.d(TAG, "resumeRecording() called");
-        mRecorder.resume();
+        if (mPcmRecorder != null) {
+            mPcmRecorder.resume();
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            mRecorder.resume();
+        }
         startTimer();
         if (mCallback != null && recorderSecondsElapsed * 1000 >= minDuration) {
             mCallback.onRecordingResumed(recorderSecondsElapsed * 1000);
@@ -136,23 +277,34 @@ public class AudioHusband {
             try {
                 mRecorder.stop();
                 mRecorder.release();
+                scanLoudness();
             } catch (RuntimeException e) {
                 e.printStackTrace();
             }
         }
         mRecorder = null;
+        if (mPcmRecorder != null) {
+            mPcmRecorder.stop();
+            mPcmRecorder = null;
+            writeLoudness();
+        }
         stopTimer();
         if (mCallback != null && recorderSecondsElapsed * 1000 >= minDuration) {
             mCallback.onRecordingStopped(recorderSecondsElapsed * 1000);
         }
+        if (recorderSecondsElapsed * 1000 >= minDuration) {
+            submitTranscode();
+        }
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.N)
     private void pauseRecording() {
         Log.d(TAG, "pauseRecording() called");
-        if (mRecorder != null) {
+        if (mRecorder != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
             mRecorder.pause();
         }
+        if (mPcmRecorder != null) {
+            mPcmRecorder.pause();
+        }
         stopTimer();
         if (mCallback != null && recorderSecondsElapsed * 1000 >= minDuration) {
             mCallback.onRecordingPaused(recorderSecondsElapsed * 1000);
@@ -171,6 +323,10 @@ public class AudioHusband {
             mRecorder.release();
             mRecorder = null;
         }
+        if (mPcmRecorder != null) {
+            mPcmRecorder.stop();
+            mPcmRecorder = null;
+        }
     }
 
 
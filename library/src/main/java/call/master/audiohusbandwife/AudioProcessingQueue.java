@@ -0,0 +1,263 @@
+package call.master.audiohusbandwife;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, prioritized queue of audio jobs (decode, resample, normalize, encode...) run by a pool
+ * of background workers, one per core by default. Higher priorities run first, equal priorities in
+ * submission order. Every job reports progress and can be cancelled, whether still queued or
+ * already running.
+ */
+public class AudioProcessingQueue {
+
+    private static final String TAG = AudioProcessingQueue.class.getSimpleName();
+
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_NORMAL = 5;
+    public static final int PRIORITY_HIGH = 10;
+
+    private static final int DEFAULT_CAPACITY = 32;
+
+    public enum STATUS {QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED}
+
+    /***
+     * The work of a job. Long running tasks should call {@link Job#setProgress(float)} and stop
+     * early, e.g. by throwing {@link CancellationException}, once {@link Job#isCancelled()}.
+     ****/
+    public interface Task {
+        public void run(Job job) throws Exception;
+    }
+
+    /***
+     * Called on the worker thread running the job. The one exception is {@link #onCancelled(Job)}
+     * for a job that never started: it is called on the thread that called {@link Job#cancel()} or
+     * {@link AudioProcessingQueue#shutdown()}, before that call returns.
+     ****/
+    public interface JobListener {
+        public void onProgress(Job job, float progress);
+
+        public void onCompleted(Job job);
+
+        public void onFailed(Job job, Exception e);
+
+        public void onCancelled(Job job);
+    }
+
+    public static class Job implements Runnable, Comparable<Job> {
+
+        private final Task mTask;
+        private final int mPriority;
+        private final long mSequence;
+        private final JobListener mListener;
+        private final AudioProcessingQueue mQueue;
+
+        private volatile STATUS mStatus = STATUS.QUEUED;
+        private volatile float mProgress;
+        private volatile boolean mCancelled;
+
+        Job(AudioProcessingQueue queue, Task task, int priority, long sequence, JobListener listener) {
+            mQueue = queue;
+            mTask = task;
+            mPriority = priority;
+            mSequence = sequence;
+            mListener = listener;
+        }
+
+        public int getPriority() {
+            return mPriority;
+        }
+
+        public STATUS getStatus() {
+            return mStatus;
+        }
+
+        public float getProgress() {
+            return mProgress;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /***
+         * @param progress
+         *            fraction done, between 0 and 1
+         ****/
+        public void setProgress(float progress) {
+            mProgress = progress;
+            if (mListener != null) {
+                mListener.onProgress(this, progress);
+            }
+        }
+
+        /***
+         * Removes a queued job right away; a running job is told to stop via {@link #isCancelled()}.
+         ****/
+        public void cancel() {
+            mCancelled = true;
+            if (mQueue.mExecutor.remove(this)) {
+                mQueue.mPending.decrementAndGet();
+                finish(STATUS.CANCELLED, null);
+            }
+        }
+
+        @Override
+        public void run() {
+            mQueue.mPending.decrementAndGet();
+            if (mCancelled) {
+                finish(STATUS.CANCELLED, null);
+                return;
+            }
+            mStatus = STATUS.RUNNING;
+            mQueue.mRunning.incrementAndGet();
+            try {
+                mTask.run(this);
+                if (mCancelled) {
+                    finish(STATUS.CANCELLED, null);
+                } else {
+                    mProgress = 1f;
+                    finish(STATUS.COMPLETED, null);
+                }
+            } catch (CancellationException e) {
+                finish(STATUS.CANCELLED, null);
+            } catch (Exception e) {
+                finish(mCancelled ? STATUS.CANCELLED : STATUS.FAILED, e);
+            } finally {
+                mQueue.mRunning.decrementAndGet();
+            }
+        }
+
+        private void finish(STATUS status, Exception e) {
+            mStatus = status;
+            if (mListener == null) {
+                return;
+            }
+            switch (status) {
+                case COMPLETED:
+                    mListener.onCompleted(this);
+                    break;
+                case FAILED:
+                    mListener.onFailed(this, e);
+                    break;
+                default:
+                    mListener.onCancelled(this);
+                    break;
+            }
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            if (mPriority != other.mPriority) {
+                return mPriority > other.mPriority ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence > other.mSequence ? 1 : 0);
+        }
+    }
+
+    private final ThreadPoolExecutor mExecutor;
+    private final int mCapacity;
+    private final AtomicInteger mPending = new AtomicInteger();
+    private final AtomicInteger mRunning = new AtomicInteger();
+    private final AtomicLong mSequence = new AtomicLong();
+
+    public AudioProcessingQueue() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_CAPACITY);
+    }
+
+    /***
+     * @param workers
+     *            number of jobs run in parallel
+     * @param capacity
+     *            number of jobs that may wait; further submissions are rejected
+     ****/
+    public AudioProcessingQueue(int workers, int capacity) {
+        if (workers <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Workers and capacity must be positive");
+        }
+        mCapacity = capacity;
+        mExecutor = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG + "-" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                // stay out of the way of the UI and audio threads
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public int getWorkerCount() {
+        return mExecutor.getMaximumPoolSize();
+    }
+
+    /***
+     * Jobs waiting for a worker.
+     ****/
+    public int getPendingCount() {
+        return mPending.get();
+    }
+
+    /***
+     * True if a new job would start right away instead of waiting.
+     ****/
+    public boolean hasHeadroom() {
+        return mPending.get() == 0 && mRunning.get() < getWorkerCount();
+    }
+
+    /***
+     * @throws RejectedExecutionException
+     *             if {@code capacity} jobs are already waiting or the queue was shut down
+     ****/
+    public Job submit(Task task, int priority, JobListener listener) {
+        if (task == null) {
+            throw new IllegalArgumentException("Task cannot be null");
+        }
+        if (mPending.incrementAndGet() > mCapacity) {
+            mPending.decrementAndGet();
+            throw new RejectedExecutionException("Queue is full");
+        }
+        Job job = new Job(this, task, priority, mSequence.getAndIncrement(), listener);
+        try {
+            mExecutor.execute(job);
+        } catch (RejectedExecutionException e) {
+            mPending.decrementAndGet();
+            throw e;
+        }
+        return job;
+    }
+
+    public Job submit(Task task) {
+        return submit(task, PRIORITY_NORMAL, null);
+    }
+
+    /***
+     * Stops accepting jobs, cancels the queued ones and interrupts the running ones. Every job that
+     * never started is reported to its listener as cancelled.
+     ****/
+    public void shutdown() {
+        List<Runnable> dropped = mExecutor.shutdownNow();
+        for (Runnable runnable : dropped) {
+            Job job = (Job) runnable;
+            mPending.decrementAndGet();
+            job.mCancelled = true;
+            job.finish(STATUS.CANCELLED, null);
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return mExecutor.awaitTermination(timeout, unit);
+    }
+}
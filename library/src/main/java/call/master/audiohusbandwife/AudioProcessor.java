@@ -0,0 +1,25 @@
+package call.master.audiohusbandwife;
+
+/**
+ * A block-wise stage operating in place on mono float PCM in the range [-1, 1].
+ * <p>
+ * Implementations must not allocate inside {@link #process(float[], int, int)}; every buffer they
+ * need is created in {@link #prepare(int)}.
+ */
+public interface AudioProcessor {
+
+    /***
+     * Called before the first block, and again whenever the sample rate changes.
+     ****/
+    public void prepare(int sampleRate);
+
+    /***
+     * Processes {@code length} samples of {@code buffer} starting at {@code offset}, in place.
+     ****/
+    public void process(float[] buffer, int offset, int length);
+
+    /***
+     * Clears any internal state (filter history, envelopes, learnt profiles) without reallocating.
+     ****/
+    public void reset();
+}
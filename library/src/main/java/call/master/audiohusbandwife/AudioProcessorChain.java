@@ -0,0 +1,168 @@
+package call.master.audiohusbandwife;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs a list of {@link AudioProcessor}s one after another on the same buffer. Each stage can be
+ * switched off individually without removing it from the chain.
+ * <p>
+ * Stages are usually added and toggled from the UI thread while the capture thread is processing.
+ * Every change publishes a new copy of the stage list, so {@link #process(float[], int, int)} always
+ * works on one consistent snapshot and never takes a lock. A stage switched back on is reset by
+ * the processing thread itself, right before its next block.
+ */
+public class AudioProcessorChain implements AudioProcessor {
+
+    private static final AudioProcessor[] NO_PROCESSORS = new AudioProcessor[0];
+    private static final boolean[] NO_FLAGS = new boolean[0];
+    private static final AtomicBoolean[] NO_RESETS = new AtomicBoolean[0];
+
+    private static final class Snapshot {
+        final AudioProcessor[] mProcessors;
+        final boolean[] mEnabled;
+        // shared by all snapshots, set by setEnabled and consumed by process
+        final AtomicBoolean[] mResetPending;
+
+        Snapshot(AudioProcessor[] processors, boolean[] enabled, AtomicBoolean[] resetPending) {
+            mProcessors = processors;
+            mEnabled = enabled;
+            mResetPending = resetPending;
+        }
+
+        int indexOf(AudioProcessor processor) {
+            for (int i = 0; i < mProcessors.length; i++) {
+                if (mProcessors[i] == processor) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private volatile Snapshot mSnapshot = new Snapshot(NO_PROCESSORS, NO_FLAGS, NO_RESETS);
+    private volatile int mSampleRate = -1;
+
+    public synchronized AudioProcessorChain add(AudioProcessor processor) {
+        if (processor == null) {
+            throw new IllegalArgumentException("Processor cannot be null");
+        }
+        if (mSampleRate > 0) {
+            processor.prepare(mSampleRate);
+        }
+        Snapshot current = mSnapshot;
+        int size = current.mProcessors.length;
+        AudioProcessor[] processors = new AudioProcessor[size + 1];
+        boolean[] enabled = new boolean[size + 1];
+        AtomicBoolean[] resetPending = new AtomicBoolean[size + 1];
+        System.arraycopy(current.mProcessors, 0, processors, 0, size);
+        System.arraycopy(current.mEnabled, 0, enabled, 0, size);
+        System.arraycopy(current.mResetPending, 0, resetPending, 0, size);
+        processors[size] = processor;
+        enabled[size] = true;
+        resetPending[size] = new AtomicBoolean();
+        mSnapshot = new Snapshot(processors, enabled, resetPending);
+        return this;
+    }
+
+    /***
+     * Switches a stage on or off. A stage that comes back on has missed the blocks in between, so
+     * its signal history is cleared before its next block. A {@link NoiseSuppressor} keeps its
+     * learnt noise profile (see {@link NoiseSuppressor#resetHistory()}); every other stage is
+     * {@link #reset()}. The reset runs on the processing thread, since that may still be inside
+     * the stage with an older snapshot.
+     ****/
+    public synchronized AudioProcessorChain setEnabled(AudioProcessor processor, boolean enabled) {
+        Snapshot current = mSnapshot;
+        int index = current.indexOf(processor);
+        if (index < 0) {
+            throw new IllegalArgumentException("Processor is not part of this chain");
+        }
+        if (current.mEnabled[index] == enabled) {
+            return this;
+        }
+        if (enabled) {
+            current.mResetPending[index].set(true);
+        }
+        boolean[] flags = current.mEnabled.clone();
+        flags[index] = enabled;
+        mSnapshot = new Snapshot(current.mProcessors, flags, current.mResetPending);
+        return this;
+    }
+
+    public boolean isEnabled(AudioProcessor processor) {
+        Snapshot current = mSnapshot;
+        int index = current.indexOf(processor);
+        return index >= 0 && current.mEnabled[index];
+    }
+
+    public int size() {
+        return mSnapshot.mProcessors.length;
+    }
+
+    /***
+     * Number of samples the output of the enabled stages lags behind the input. Feeding that much
+     * silence after the last block flushes the delayed tail out of the chain.
+     ****/
+    public int getLatency() {
+        Snapshot current = mSnapshot;
+        int latency = 0;
+        for (int i = 0; i < current.mProcessors.length; i++) {
+            if (current.mEnabled[i]) {
+                latency += latencyOf(current.mProcessors[i]);
+            }
+        }
+        return latency;
+    }
+
+    /***
+     * Latency of any processor, zero for stages that do not delay their output.
+     ****/
+    static int latencyOf(AudioProcessor processor) {
+        if (processor instanceof NoiseSuppressor) {
+            return ((NoiseSuppressor) processor).getLatency();
+        }
+        if (processor instanceof AudioProcessorChain) {
+            return ((AudioProcessorChain) processor).getLatency();
+        }
+        return 0;
+    }
+
+    @Override
+    public void prepare(int sampleRate) {
+        mSampleRate = sampleRate;
+        AudioProcessor[] processors = mSnapshot.mProcessors;
+        for (int i = 0; i < processors.length; i++) {
+            processors[i].prepare(sampleRate);
+        }
+    }
+
+    @Override
+    public void process(float[] buffer, int offset, int length) {
+        Snapshot current = mSnapshot;
+        for (int i = 0; i < current.mProcessors.length; i++) {
+            if (current.mEnabled[i]) {
+                AudioProcessor processor = current.mProcessors[i];
+                if (current.mResetPending[i].compareAndSet(true, false)) {
+                    resetHistory(processor);
+                }
+                processor.process(buffer, offset, length);
+            }
+        }
+    }
+
+    private static void resetHistory(AudioProcessor processor) {
+        if (processor instanceof NoiseSuppressor) {
+            ((NoiseSuppressor) processor).resetHistory();
+        } else {
+            processor.reset();
+        }
+    }
+
+    @Override
+    public void reset() {
+        AudioProcessor[] processors = mSnapshot.mProcessors;
+        for (int i = 0; i < processors.length; i++) {
+            processors[i].reset();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package call.master.audiohusbandwife;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Decodes a recording, downsamples it, normalizes its loudness and encodes it to AAC (.m4a), ready
+ * for upload. Runs as an {@link AudioProcessingQueue.Task}.
+ * <p>
+ * The input is decoded twice, once to measure the loudness and once to convert, so memory use does
+ * not grow with the length of the recording. The first pass counts for half of the progress. The
+ * loudness of the result is stored next to it as {@link LoudnessMetadata}.
+ */
+@RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN_MR2)
+public class AudioTranscodeTask implements AudioProcessingQueue.Task {
+
+    private static final String TAG = AudioTranscodeTask.class.getSimpleName();
+
+    public static final int DEFAULT_SAMPLE_RATE = 16000;
+    public static final int DEFAULT_BIT_RATE = 32000;
+
+    private final Context mContext;
+    private final File mInput;
+    private final File mOutput;
+    private final int mSampleRate;
+    private final int mBitRate;
+    private final LoudnessNormalizer mNormalizer;
+
+    public AudioTranscodeTask(Context context, File input, File output) {
+        this(context, input, output, DEFAULT_SAMPLE_RATE, DEFAULT_BIT_RATE, new LoudnessNormalizer());
+    }
+
+    public AudioTranscodeTask(Context context, File input, File output, int sampleRate, int bitRate,
+                              LoudnessNormalizer normalizer) {
+        mContext = context.getApplicationContext();
+        mInput = input;
+        mOutput = output;
+        mSampleRate = sampleRate;
+        mBitRate = bitRate;
+        mNormalizer = normalizer;
+    }
+
+    public File getOutput() {
+        return mOutput;
+    }
+
+    @Override
+    public void run(final AudioProcessingQueue.Job job) throws Exception {
+        Uri uri = Uri.fromFile(mInput);
+
+        // pass 1: measure
+        final PcmDecoder analysis = new PcmDecoder(mContext, uri);
+        analysis.decode(new AudioProcessor() {
+            @Override
+            public void prepare(int sampleRate) {
+                mNormalizer.prepare(sampleRate);
+            }
+
+            @Override
+            public void process(float[] buffer, int offset, int length) {
+                mNormalizer.process(buffer, offset, length);
+                report(job, analysis, 0f);
+            }
+
+            @Override
+            public void reset() {
+            }
+        });
+        checkCancelled(job);
+        mNormalizer.finishAnalysis();
+
+        // pass 2: resample, apply the gain, encode
+        AacEncoder encoder = new AacEncoder(mOutput, mSampleRate, mBitRate);
+        boolean finished = false;
+        try {
+            PcmDecoder conversion = new PcmDecoder(mContext, uri);
+            ConversionSink sink = new ConversionSink(job, conversion, encoder);
+            conversion.decode(sink);
+            checkCancelled(job);
+            sink.flush();
+            encoder.finish();
+            finished = true;
+        } finally {
+            if (!finished) {
+                encoder.release();
+                mOutput.delete();
+            }
+        }
+
+        try {
+            mNormalizer.getOutputMetadata().write(mOutput);
+        } catch (IOException e) {
+            // the player only loses its leveling hint
+            Log.w(TAG, "writing the loudness of " + mOutput + " failed", e);
+        }
+    }
+
+    private class ConversionSink implements AudioProcessor {
+
+        private final AudioProcessingQueue.Job mJob;
+        private final PcmDecoder mDecoder;
+        private final AacEncoder mEncoder;
+        private Resampler mResampler;
+        private float[] mConverted = new float[0];
+
+        ConversionSink(AudioProcessingQueue.Job job, PcmDecoder decoder, AacEncoder encoder) {
+            mJob = job;
+            mDecoder = decoder;
+            mEncoder = encoder;
+        }
+
+        @Override
+        public void prepare(int sampleRate) {
+            mResampler = new Resampler(sampleRate, mSampleRate);
+        }
+
+        @Override
+        public void process(float[] buffer, int offset, int length) {
+            ensureCapacity(mResampler.getMaxOutputLength(length));
+            int count = mResampler.process(buffer, offset, length, mConverted, 0);
+            write(count);
+            report(mJob, mDecoder, 0.5f);
+        }
+
+        void flush() {
+            if (mResampler == null) {
+                return;
+            }
+            ensureCapacity(mResampler.getMaxOutputLength(0));
+            write(mResampler.flush(mConverted, 0));
+        }
+
+        private void write(int count) {
+            mNormalizer.process(mConverted, 0, count);
+            mEncoder.write(mConverted, 0, count);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (mConverted.length < capacity) {
+                mConverted = new float[capacity];
+            }
+        }
+
+        @Override
+        public void reset() {
+        }
+    }
+
+    private static void report(AudioProcessingQueue.Job job, PcmDecoder decoder, float base) {
+        if (job.isCancelled()) {
+            decoder.cancel();
+            return;
+        }
+        long duration = decoder.getDurationUs();
+        if (duration > 0) {
+            job.setProgress(base + 0.5f * Math.min(1f, (float) decoder.getPositionUs() / duration));
+        }
+    }
+
+    private static void checkCancelled(AudioProcessingQueue.Job job) {
+        if (job.isCancelled()) {
+            throw new CancellationException();
+        }
+    }
+}
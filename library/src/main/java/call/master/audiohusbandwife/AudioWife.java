@@ -4,14 +4,19 @@ import android.content.Context;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.media.MediaPlayer.OnCompletionListener;
+import android.media.MediaTimestamp;
 import android.media.TimedMetaData;
+import android.media.audiofx.LoudnessEnhancer;
 import android.media.audiofx.Visualizer;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
+import android.support.annotation.RequiresApi;
 import android.util.Log;
 import android.view.View;
 
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 
@@ -83,15 +88,13 @@ public class AudioWife {
         return mAudioWife;
     }
 
-    private float mCurrentAmplitude = 0f;
-
     private Runnable mUpdateProgress = new Runnable() {
 
         public void run() {
 
             if (mProgressUpdateHandler != null && mMediaPlayer.isPlaying()) {
 
-                int currentTime = mMediaPlayer.getCurrentPosition();
+                int currentTime = (int) (getCurrentPositionUs() / 1000);
                 // repeat the process
 
                 mProgressUpdateHandler.postDelayed(this, AUDIO_PROGRESS_UPDATE_TIME);
@@ -104,6 +107,241 @@ public class AudioWife {
         }
     };
 
+    /***
+     * Longest wait between two clock updates while cues are pending
+     ****/
+    private static final long CLOCK_REFRESH_TIME = 250;
+
+    private final PlaybackClock mPlaybackClock = new PlaybackClock();
+    private final CueScheduler mCueScheduler = new CueScheduler();
+
+    /***
+     * Playback position in microseconds, interpolated between the timestamps of the player (API
+     * 23+) or smoothed from {@link MediaPlayer#getCurrentPosition()}. Use it to sync lyrics or
+     * transcripts; it is steady to the millisecond where the plain position jitters.
+     ****/
+    public long getCurrentPositionUs() {
+        if (mMediaPlayer == null || !mPrepared) {
+            return 0;
+        }
+        updateClock();
+        return mPlaybackClock.getTimeUs();
+    }
+
+    /***
+     * Calls {@code listener} on the main thread when playback reaches {@code timeUs}, and again
+     * each time it gets there after a seek back. Cues belong to the current audio and are dropped
+     * by {@link #init(Context, Uri)} and {@link #release()}.
+     ****/
+    public CueScheduler.Cue addCue(long timeUs, Object tag, CueScheduler.OnCueListener listener) {
+        CueScheduler.Cue cue = mCueScheduler.schedule(timeUs, tag, listener);
+        scheduleCueTick();
+        return cue;
+    }
+
+    public void removeCue(CueScheduler.Cue cue) {
+        mCueScheduler.cancel(cue);
+    }
+
+    private void updateClock() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && updateClockFromTimestamp()) {
+            return;
+        }
+        mPlaybackClock.onPosition(mMediaPlayer.getCurrentPosition() * 1000L, mMediaPlayer.isPlaying() ? 1f : 0f);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    private boolean updateClockFromTimestamp() {
+        MediaTimestamp timestamp = mMediaPlayer.getTimestamp();
+        if (timestamp == null) {
+            return false;
+        }
+        mPlaybackClock.onTimestamp(timestamp.getAnchorMediaTimeUs(), timestamp.getAnchorSytemNanoTime(),
+                timestamp.getMediaClockRate());
+        return true;
+    }
+
+    private Runnable mCueTick = new Runnable() {
+
+        public void run() {
+            if (mMediaPlayer == null) {
+                return;
+            }
+            mCueScheduler.followTo(getCurrentPositionUs(), PlaybackClock.JUMP_THRESHOLD_US);
+            scheduleCueTick();
+        }
+    };
+
+    /***
+     * Wakes up when the next cue is due rather than polling, but at least every
+     * {@link #CLOCK_REFRESH_TIME} to pick up fresh timestamps.
+     ****/
+    private void scheduleCueTick() {
+        if (mProgressUpdateHandler == null) {
+            return;
+        }
+        mProgressUpdateHandler.removeCallbacks(mCueTick);
+        if (mMediaPlayer == null || !mMediaPlayer.isPlaying() || mCueScheduler.size() == 0) {
+            return;
+        }
+        long delay = CLOCK_REFRESH_TIME;
+        long next = mCueScheduler.getNextCueTimeUs();
+        float rate = mPlaybackClock.getRate();
+        if (next >= 0 && rate > 0) {
+            long remainingUs = next - mPlaybackClock.getTimeUs();
+            delay = Math.min(delay, Math.max(0, (long) Math.ceil(remainingUs / 1000.0 / rate)));
+        }
+        mProgressUpdateHandler.postDelayed(mCueTick, delay);
+    }
+
+    /***
+     * Brings the cues in line with the clock after it was re-anchored to the exact player position.
+     * A move smaller than {@link PlaybackClock#JUMP_THRESHOLD_US} is the difference between the
+     * interpolated and the exact position and is followed; a larger one is a seek.
+     ****/
+    private void syncCues(long positionUs) {
+        if (Math.abs(positionUs - mCueScheduler.getPositionUs()) >= PlaybackClock.JUMP_THRESHOLD_US) {
+            mCueScheduler.seekTo(positionUs);
+        } else {
+            mCueScheduler.followTo(positionUs, PlaybackClock.JUMP_THRESHOLD_US);
+        }
+    }
+
+    private void stopCueTick() {
+        if (mProgressUpdateHandler != null) {
+            mProgressUpdateHandler.removeCallbacks(mCueTick);
+        }
+    }
+
+    private final AudioFocusPolicy.Player mFocusPlayer = new AudioFocusPolicy.Player() {
+
+        @Override
+        public void pausePlayback() {
+            AudioWife.this.pausePlayback();
+        }
+
+        @Override
+        public void resumePlayback() {
+            if (mMediaPlayer == null || mMediaPlayer.isPlaying()) {
+                return;
+            }
+            if (mPrepared) {
+                startPlayback();
+            } else if (mPreparing) {
+                mPlayWhenPrepared = true;
+            }
+        }
+
+        @Override
+        public void setVolume(float volume) {
+            mFocusVolume = volume;
+            applyVolume();
+        }
+    };
+
+    private float mFocusVolume = 1f;
+    private float mLoudnessTarget = LoudnessMetadata.DEFAULT_TARGET_LUFS;
+    private LoudnessMetadata mLoudnessMetadata;
+    private LoudnessEnhancer mLoudnessEnhancer;
+
+    /***
+     * Level that audio with {@link LoudnessMetadata} is played at, in LUFS. -16 by default.
+     ****/
+    public AudioWife setLoudnessTarget(float targetLufs) {
+        this.mLoudnessTarget = targetLufs;
+        applyVolume();
+        return this;
+    }
+
+    /***
+     * Loudness of the current audio, to level it with others. {@link #init(Context, Uri)} picks up
+     * the sidecar of local files by itself; call this afterwards for other sources, e.g. with values
+     * delivered by a server, or with null to play the audio as it is.
+     ****/
+    public AudioWife setLoudnessMetadata(LoudnessMetadata metadata) {
+        this.mLoudnessMetadata = metadata;
+        applyVolume();
+        return this;
+    }
+
+    /***
+     * Combines the focus volume with the loudness gain. Attenuation goes through
+     * {@link MediaPlayer#setVolume(float, float)}, which cannot go above 1, so quiet audio is
+     * raised with a {@link LoudnessEnhancer} on API 19+.
+     ****/
+    private void applyVolume() {
+        if (mMediaPlayer == null) {
+            return;
+        }
+        float gain = mLoudnessMetadata == null ? 1f
+                : mLoudnessMetadata.getGain(mLoudnessTarget, LoudnessMetadata.DEFAULT_CEILING_DB);
+        float volume = mFocusVolume * Math.min(gain, 1f);
+        mMediaPlayer.setVolume(volume, volume);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            applyLoudnessEnhancer(gain);
+        }
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.KITKAT)
+    private void applyLoudnessEnhancer(float gain) {
+        if (gain > 1f) {
+            try {
+                if (mLoudnessEnhancer == null) {
+                    mLoudnessEnhancer = new LoudnessEnhancer(mMediaPlayer.getAudioSessionId());
+                }
+                // millibels
+                mLoudnessEnhancer.setTargetGain((int) (2000 * Math.log10(gain)));
+                mLoudnessEnhancer.setEnabled(true);
+            } catch (RuntimeException e) {
+                // effect not available on this device, play at unity
+                Log.w(TAG, "applyLoudnessEnhancer() failed", e);
+            }
+        } else if (mLoudnessEnhancer != null) {
+            mLoudnessEnhancer.setEnabled(false);
+        }
+    }
+
+    private void releaseLoudnessEnhancer() {
+        if (mLoudnessEnhancer != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            mLoudnessEnhancer.release();
+            mLoudnessEnhancer = null;
+        }
+    }
+
+    /***
+     * Disk budget of the default cache for remote Uris
+     ****/
+    private static final long DEFAULT_CACHE_SIZE = 50 * 1024 * 1024;
+    private static final String CACHE_DIRECTORY = "audiowife";
+    // MediaPlayer.MEDIA_ERROR_IO, API 17
+    private static final int MEDIA_ERROR_IO = -1004;
+
+    private AudioCache mAudioCache;
+    private Closeable mMediaDataSource;
+    private boolean mPrepared;
+    // an asynchronous prepare is in flight, the only state in which play() waits
+    private boolean mPreparing;
+    private boolean mPlayWhenPrepared;
+
+    /***
+     * Cache used for http(s) Uris on API 23+. Without one, a 50 MB cache in the app cache
+     * directory is created on first use. Call before {@link #init(Context, Uri)}.
+     ****/
+    public AudioWife setAudioCache(AudioCache audioCache) {
+        this.mAudioCache = audioCache;
+        return this;
+    }
+
+    private final AudioFocusPolicy mAudioFocusPolicy = new AudioFocusPolicy(mFocusPlayer);
+    private AudioFocusHelper mAudioFocusHelper;
+
+    /***
+     * Focus handling of this player, e.g. to pause instead of ducking under notifications.
+     ****/
+    public AudioFocusPolicy getAudioFocusPolicy() {
+        return mAudioFocusPolicy;
+    }
+
     /***
      * Starts playing audio file associated. Before playing the audio, visibility of appropriate UI
      * controls is made visible. Calling this method has no effect if the audio is already being
@@ -123,11 +361,57 @@ public class AudioWife {
             return;
         }
 
+        if (!mPrepared && !mPreparing) {
+            // opening or preparing the Uri failed, or the player hit an error since
+            Log.w(TAG, "play() called on a player that failed to prepare");
+            mOnErrorListener.onError(mMediaPlayer, MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
+            return;
+        }
+
+        if (mAudioFocusHelper != null && !mAudioFocusHelper.requestFocus()) {
+            Log.w(TAG, "play() audio focus not granted");
+            return;
+        }
+        mAudioFocusPolicy.onPlay();
+
+        if (!mPrepared) {
+            // remote source still preparing, start as soon as it is ready
+            mPlayWhenPrepared = true;
+            return;
+        }
+        startPlayback();
+    }
+
+    private MediaPlayer.OnPreparedListener mOnPrepared = new MediaPlayer.OnPreparedListener() {
+
+        @Override
+        public void onPrepared(MediaPlayer mp) {
+            mPreparing = false;
+            mPrepared = true;
+            if (mPlayWhenPrepared) {
+                mPlayWhenPrepared = false;
+                startPlayback();
+            }
+        }
+    };
+
+    private static boolean isRemote(Uri uri) {
+        String scheme = uri.getScheme();
+        return "http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme);
+    }
+
+    private void startPlayback() {
+
         mProgressUpdateHandler.removeCallbacks(mUpdateProgress);
         mProgressUpdateHandler.postDelayed(mUpdateProgress, AUDIO_PROGRESS_UPDATE_TIME);
 
         mMediaPlayer.start();
         duration = mMediaPlayer.getDuration();
+        long positionUs = mMediaPlayer.getCurrentPosition() * 1000L;
+        mPlaybackClock.seekTo(positionUs);
+        mPlaybackClock.setRate(1f);
+        syncCues(positionUs);
+        scheduleCueTick();
         mPlayPauseListener.onPlayingStarts();
 
     }
@@ -139,13 +423,26 @@ public class AudioWife {
      */
     public void pause() {
 
+        mAudioFocusPolicy.onPause();
+        pausePlayback();
+    }
+
+    private void pausePlayback() {
+
+        mPlayWhenPrepared = false;
         if (mMediaPlayer == null) {
             return;
         }
 
         if (mMediaPlayer.isPlaying()) {
             mMediaPlayer.pause();
+            // the paused position is exact, no need to interpolate
+            long positionUs = mMediaPlayer.getCurrentPosition() * 1000L;
+            mPlaybackClock.setRate(0f);
+            mPlaybackClock.seekTo(positionUs);
+            syncCues(positionUs);
         }
+        stopCueTick();
 
         mPlayPauseListener.onPaused();
     }
@@ -174,6 +471,10 @@ public class AudioWife {
 
         mProgressUpdateHandler = new Handler();
 
+        if (mAudioFocusHelper == null) {
+            mAudioFocusHelper = new AudioFocusHelper(ctx, mAudioFocusPolicy);
+        }
+
         initPlayer(ctx);
 
         return this;
@@ -229,35 +530,67 @@ public class AudioWife {
      ****/
     private void initPlayer(Context ctx) {
 
+        releaseLoudnessEnhancer();
+        stopCueTick();
+        mCueScheduler.clear();
+        mCueScheduler.seekTo(0);
+        mPlaybackClock.reset();
+        if (mMediaPlayer != null) {
+            // init() again without release(), do not leak the previous player and its download
+            mMediaPlayer.reset();
+            mMediaPlayer.release();
+        }
+        closeMediaDataSource();
         mMediaPlayer = new MediaPlayer();
-        mMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            mMediaPlayer.setAudioAttributes(AudioFocusHelper.getAudioAttributes());
+        } else {
+            mMediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        }
 
-        try {
-            mMediaPlayer.setDataSource(ctx, mUri);
-        } catch (IllegalArgumentException e) {
-            e.printStackTrace();
-        } catch (SecurityException e) {
-            e.printStackTrace();
-        } catch (IllegalStateException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (Exception e) {
-            e.printStackTrace();
+        mPrepared = false;
+        mPreparing = false;
+        mPlayWhenPrepared = false;
+        boolean remote = isRemote(mUri);
+
+        mMediaPlayer.setOnErrorListener(mOnErrorListener);
+        if (!setDataSource(ctx, remote)) {
+            // the player is still idle, preparing it would only throw
+            closeMediaDataSource();
+            mOnErrorListener.onError(mMediaPlayer, MediaPlayer.MEDIA_ERROR_UNKNOWN, MEDIA_ERROR_IO);
+            return;
         }
 
-        try {
-            mMediaPlayer.prepare();
-        } catch (IllegalStateException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (Exception e) {
-            e.printStackTrace();
+        if (remote) {
+            // never block the caller on the network
+            mMediaPlayer.setOnPreparedListener(mOnPrepared);
+            try {
+                mMediaPlayer.prepareAsync();
+                mPreparing = true;
+            } catch (IllegalStateException e) {
+                e.printStackTrace();
+                closeMediaDataSource();
+                mOnErrorListener.onError(mMediaPlayer, MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
+                return;
+            }
+        } else {
+            try {
+                mMediaPlayer.prepare();
+                mPrepared = true;
+            } catch (IllegalStateException e) {
+                e.printStackTrace();
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            if (!mPrepared) {
+                mOnErrorListener.onError(mMediaPlayer, MediaPlayer.MEDIA_ERROR_UNKNOWN, MEDIA_ERROR_IO);
+                return;
+            }
         }
 
         mMediaPlayer.setOnCompletionListener(mOnCompletion);
-        mMediaPlayer.setOnErrorListener(mOnErrorListener);
         mMediaPlayer.setOnSeekCompleteListener(new MediaPlayer.OnSeekCompleteListener() {
             @Override
             public void onSeekComplete(MediaPlayer mp) {
@@ -273,6 +606,10 @@ public class AudioWife {
             });
         }
 
+        mLoudnessMetadata = "file".equals(mUri.getScheme())
+                ? LoudnessMetadata.read(new File(mUri.getPath())) : null;
+        applyVolume();
+
         setupVisualizerFxAndUI();
     }
 
@@ -283,11 +620,7 @@ public class AudioWife {
         mVisualizer = new Visualizer(mMediaPlayer.getAudioSessionId());
         mVisualizer.setCaptureSize(Visualizer.getCaptureSizeRange()[1]);
 
-        mRunningSoundAvg = new double[3];
-        mCurrentAvgEnergyOneSec = new double[3];
-        mCurrentAvgEnergyOneSec[0] = -1;
-        mCurrentAvgEnergyOneSec[1] = -1;
-        mCurrentAvgEnergyOneSec[2] = -1;
+        mBandEnergyAnalyzer.reset();
 
         Visualizer.OnDataCaptureListener captureListener = new Visualizer.OnDataCaptureListener() {
             @Override
@@ -310,84 +643,47 @@ public class AudioWife {
 
     }
 
-    private double mRunningSoundAvg[];
-    private double mCurrentAvgEnergyOneSec[];
-    private int mNumberOfSamplesInOneSec;
-    private long mSystemTimeStartSec;
-    // FREQS
-    private static final int LOW_FREQUENCY = 300;
-    private static final int MID_FREQUENCY = 2500;
-    private static final int HIGH_FREQUENCY = 10000;
+    private final BandEnergyAnalyzer mBandEnergyAnalyzer = new BandEnergyAnalyzer();
+    private float[] mVisualizerMagnitudes;
+
+    /***
+     * Band energies and beats of the audio being played, updated from the Visualizer FFT. For full
+     * resolution use it as the listener of a {@link Spectrogram} fed by {@link #createDecoder(Context)}.
+     ****/
+    public BandEnergyAnalyzer getBandEnergyAnalyzer() {
+        return mBandEnergyAnalyzer;
+    }
+
+    /***
+     * Decoder over the current audio source, to stream its PCM into a {@link Spectrogram} or any
+     * other {@link AudioProcessor}.
+     ****/
+    @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
+    public PcmDecoder createDecoder(Context ctx) {
+        if (mUri == null) {
+            throw new IllegalStateException("Uri cannot be null. Call init() before calling this method");
+        }
+        return new PcmDecoder(ctx, mUri);
+    }
 
     public void updateVisualizerFFT(byte[] audioBytes) {
-        int energySum = 0;
-        energySum += Math.abs(audioBytes[0]);
-        int k = 2;
-        double captureSize = mVisualizer.getCaptureSize() / 2;
-        int sampleRate = mVisualizer.getSamplingRate() / 2000;
-        double nextFrequency = ((k / 2) * sampleRate) / (captureSize);
-        while (nextFrequency < LOW_FREQUENCY) {
-            energySum += Math.sqrt((audioBytes[k] * audioBytes[k])
-                    * (audioBytes[k + 1] * audioBytes[k + 1]));
-            k += 2;
-            nextFrequency = ((k / 2) * sampleRate) / (captureSize);
-        }
-        double sampleAvgAudioEnergy = (double) energySum
-                / (double) ((k * 1.0) / 2.0);
-
-        mRunningSoundAvg[0] += sampleAvgAudioEnergy;
-        /*if ((sampleAvgAudioEnergy > mCurrentAvgEnergyOneSec[0])
-                && (mCurrentAvgEnergyOneSec[0] > 0)) {
-            fireBeatDetectedLowEvent(sampleAvgAudioEnergy);
-        }*/
-        energySum = 0;
-        while (nextFrequency < MID_FREQUENCY) {
-            energySum += Math.sqrt((audioBytes[k] * audioBytes[k])
-                    * (audioBytes[k + 1] * audioBytes[k + 1]));
-            k += 2;
-            nextFrequency = ((k / 2) * sampleRate) / (captureSize);
-        }
-
-        sampleAvgAudioEnergy = (double) energySum / (double) ((k * 1.0) / 2.0);
-        mRunningSoundAvg[1] += sampleAvgAudioEnergy;
-        /*if ((sampleAvgAudioEnergy > mCurrentAvgEnergyOneSec[1])
-                && (mCurrentAvgEnergyOneSec[1] > 0)) {
-            fireBeatDetectedMidEvent(sampleAvgAudioEnergy);
-        }*/
-        energySum = Math.abs(audioBytes[1]);
-
-        while ((nextFrequency < HIGH_FREQUENCY) && (k < audioBytes.length)) {
-            energySum += Math.sqrt((audioBytes[k] * audioBytes[k])
-                    * (audioBytes[k + 1] * audioBytes[k + 1]));
-            k += 2;
-            nextFrequency = ((k / 2) * sampleRate) / (captureSize);
-        }
-
-        sampleAvgAudioEnergy = (double) energySum / (double) ((k * 1.0) / 2.0);
-        mRunningSoundAvg[2] += sampleAvgAudioEnergy;
-        /*if ((sampleAvgAudioEnergy > mCurrentAvgEnergyOneSec[2])
-                && (mCurrentAvgEnergyOneSec[2] > 0)) {
-            fireBeatDetectedHighEvent(sampleAvgAudioEnergy);
-        }*/
-
-        double avg = (mRunningSoundAvg[0] + mRunningSoundAvg[1] + mRunningSoundAvg[2]) / 3d;
-        mCurrentAmplitude = (float) avg;
-//        manageAnimation((float) avg);
-
-        mNumberOfSamplesInOneSec++;
-        if ((System.currentTimeMillis() - mSystemTimeStartSec) > 1000) {
-            mCurrentAvgEnergyOneSec[0] = mRunningSoundAvg[0]
-                    / mNumberOfSamplesInOneSec;
-            mCurrentAvgEnergyOneSec[1] = mRunningSoundAvg[1]
-                    / mNumberOfSamplesInOneSec;
-            mCurrentAvgEnergyOneSec[2] = mRunningSoundAvg[2]
-                    / mNumberOfSamplesInOneSec;
-            mNumberOfSamplesInOneSec = 0;
-            mRunningSoundAvg[0] = 0.0;
-            mRunningSoundAvg[1] = 0.0;
-            mRunningSoundAvg[2] = 0.0;
-            mSystemTimeStartSec = System.currentTimeMillis();
+        // Visualizer layout: Re(DC), Re(Nyquist), then Re/Im pairs for bins 1 .. n/2 - 1
+        int captureSize = audioBytes.length;
+        int bins = captureSize / 2 + 1;
+        if (mVisualizerMagnitudes == null || mVisualizerMagnitudes.length != bins) {
+            mVisualizerMagnitudes = new float[bins];
+        }
+        mVisualizerMagnitudes[0] = Math.abs(audioBytes[0]) / 128f;
+        mVisualizerMagnitudes[bins - 1] = Math.abs(audioBytes[1]) / 128f;
+        for (int k = 1; k < bins - 1; k++) {
+            float re = audioBytes[2 * k];
+            float im = audioBytes[2 * k + 1];
+            mVisualizerMagnitudes[k] = (float) Math.sqrt(re * re + im * im) / 128f;
         }
+
+        // getSamplingRate() is in milliHertz
+        float binHz = mVisualizer.getSamplingRate() / 1000f / captureSize;
+        mBandEnergyAnalyzer.onSpectrum(mVisualizerMagnitudes, bins, binHz, System.currentTimeMillis());
     }
 
 
@@ -397,8 +693,18 @@ public class AudioWife {
         @Override
         public void onCompletion(MediaPlayer mp) {
 
+            stopCueTick();
+            // cues up to the very end still fire
+            mCueScheduler.advanceTo(mp.getDuration() * 1000L);
+            // the next play() starts over, cues from 0 on fire again
+            mCueScheduler.seekTo(0);
+            mPlaybackClock.setRate(0f);
             mPlayPauseListener.onPaused();
             status = STATUS.STOPPED;
+            mAudioFocusPolicy.onStop();
+            if (mAudioFocusHelper != null) {
+                mAudioFocusHelper.abandonFocus();
+            }
             // ensure that our completion listener fires first.
             // This will provide the developer to over-ride our
             // completion listener functionality
@@ -409,10 +715,60 @@ public class AudioWife {
         }
     };
 
+    /***
+     * @return false if the Uri could not be opened
+     ****/
+    private boolean setDataSource(Context ctx, boolean remote) {
+        try {
+            if (remote && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                if (mAudioCache == null) {
+                    mAudioCache = new AudioCache(new File(ctx.getCacheDir(), CACHE_DIRECTORY), DEFAULT_CACHE_SIZE);
+                }
+                CachedMediaDataSource dataSource = new CachedMediaDataSource(mAudioCache.open(mUri.toString()));
+                mMediaDataSource = dataSource;
+                mMediaPlayer.setDataSource(dataSource);
+            } else {
+                mMediaPlayer.setDataSource(ctx, mUri);
+            }
+            return true;
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+        } catch (SecurityException e) {
+            e.printStackTrace();
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /***
+     * Hands the cached download back to the {@link AudioCache}. The player closes its data source
+     * on release as well, which is a no-op afterwards.
+     ****/
+    private void closeMediaDataSource() {
+        if (mMediaDataSource == null) {
+            return;
+        }
+        try {
+            mMediaDataSource.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        mMediaDataSource = null;
+    }
+
     private MediaPlayer.OnErrorListener mOnErrorListener = new MediaPlayer.OnErrorListener() {
 
         @Override
         public boolean onError(MediaPlayer mp, int what, int extra) {
+            // the player is in the error state now, play() reports instead of waiting or starting
+            mPrepared = false;
+            mPreparing = false;
+            mPlayWhenPrepared = false;
             for (MediaPlayer.OnErrorListener listener : mErrorListeners) {
                 listener.onError(mp, what, extra);
             }
@@ -453,12 +809,24 @@ public class AudioWife {
 
     public void release() {
 
+        mAudioFocusPolicy.onStop();
+        if (mAudioFocusHelper != null) {
+            mAudioFocusHelper.abandonFocus();
+        }
+
         if (mMediaPlayer != null) {
-            mMediaPlayer.stop();
+            if (mPrepared) {
+                mMediaPlayer.stop();
+            }
+            releaseLoudnessEnhancer();
+            stopCueTick();
+            mCueScheduler.clear();
+            mPlaybackClock.reset();
             mMediaPlayer.reset();
             mMediaPlayer.release();
             mMediaPlayer = null;
             mProgressUpdateHandler = null;
         }
+        closeMediaDataSource();
     }
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package call.master.audiohusbandwife;
+
+/**
+ * Automatic gain control. A peak envelope follower with separate attack and release times drives
+ * the gain towards a target level; the gain is capped so that silence is not pumped up to the
+ * noise floor, and the output is hard limited to [-1, 1].
+ */
+public class AutomaticGainControl implements AudioProcessor {
+
+    private static final float DEFAULT_TARGET_DB = -6f;
+    private static final float DEFAULT_MAX_GAIN_DB = 24f;
+    private static final float DEFAULT_ATTACK_MILLIS = 10f;
+    private static final float DEFAULT_RELEASE_MILLIS = 300f;
+
+    private final float mTarget;
+    private final float mMaxGain;
+    private final float mAttackMillis;
+    private final float mReleaseMillis;
+
+    private float mAttackCoefficient;
+    private float mReleaseCoefficient;
+    private float mEnvelope;
+
+    public AutomaticGainControl() {
+        this(DEFAULT_TARGET_DB, DEFAULT_MAX_GAIN_DB, DEFAULT_ATTACK_MILLIS, DEFAULT_RELEASE_MILLIS);
+    }
+
+    /***
+     * @param targetDb
+     *            peak level the envelope is driven to, in dBFS
+     * @param maxGainDb
+     *            largest gain applied, in dB
+     * @param attackMillis
+     *            time constant while the level rises (gain falls)
+     * @param releaseMillis
+     *            time constant while the level falls (gain recovers)
+     ****/
+    public AutomaticGainControl(float targetDb, float maxGainDb, float attackMillis, float releaseMillis) {
+        if (attackMillis <= 0 || releaseMillis <= 0) {
+            throw new IllegalArgumentException("Attack and release times must be positive");
+        }
+        mTarget = dbToLinear(targetDb);
+        mMaxGain = dbToLinear(maxGainDb);
+        mAttackMillis = attackMillis;
+        mReleaseMillis = releaseMillis;
+    }
+
+    /***
+     * Gain that would be applied to the next sample, as a linear factor.
+     ****/
+    public float getCurrentGain() {
+        return gainFor(mEnvelope);
+    }
+
+    @Override
+    public void prepare(int sampleRate) {
+        mAttackCoefficient = (float) Math.exp(-1000.0 / (mAttackMillis * sampleRate));
+        mReleaseCoefficient = (float) Math.exp(-1000.0 / (mReleaseMillis * sampleRate));
+        reset();
+    }
+
+    @Override
+    public void process(float[] buffer, int offset, int length) {
+        float envelope = mEnvelope;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            float x = buffer[i];
+            float level = Math.abs(x);
+            float coefficient = level > envelope ? mAttackCoefficient : mReleaseCoefficient;
+            envelope = level + coefficient * (envelope - level);
+
+            float y = x * gainFor(envelope);
+            if (y > 1f) {
+                y = 1f;
+            } else if (y < -1f) {
+                y = -1f;
+            }
+            buffer[i] = y;
+        }
+        mEnvelope = envelope;
+    }
+
+    private float gainFor(float envelope) {
+        return envelope * mMaxGain > mTarget ? mTarget / envelope : mMaxGain;
+    }
+
+    @Override
+    public void reset() {
+        mEnvelope = 0f;
+    }
+
+    private static float dbToLinear(float db) {
+        return (float) Math.pow(10, db / 20);
+    }
+}
@@ -0,0 +1,105 @@
+package call.master.audiohusbandwife;
+
+/**
+ * Low / mid / high band energy and simple beat detection on magnitude spectra. A band "beats" when
+ * its energy in the latest spectrum exceeds its average over the previous second.
+ * <p>
+ * Fed by {@link AudioWife} from the Visualizer FFT, or directly as the listener of a
+ * {@link Spectrogram} for full float resolution.
+ */
+public class BandEnergyAnalyzer implements Spectrogram.OnSpectrumListener {
+
+    public static final int BAND_LOW = 0;
+    public static final int BAND_MID = 1;
+    public static final int BAND_HIGH = 2;
+
+    // FREQS
+    private static final int LOW_FREQUENCY = 300;
+    private static final int MID_FREQUENCY = 2500;
+    private static final int HIGH_FREQUENCY = 10000;
+
+    private final double[] mRunningSoundAvg = new double[3];
+    private final double[] mCurrentAvgEnergyOneSec = new double[3];
+    private final double[] mBandEnergy = new double[3];
+    private int mNumberOfSamplesInOneSec;
+    private long mTimeStartSec;
+    private float mCurrentAmplitude;
+
+    public BandEnergyAnalyzer() {
+        reset();
+    }
+
+    @Override
+    public void onSpectrum(float[] magnitudes, int bins, float binHz, long timeMillis) {
+        int k = 0;
+        k = accumulateBand(BAND_LOW, magnitudes, bins, binHz, k, LOW_FREQUENCY);
+        k = accumulateBand(BAND_MID, magnitudes, bins, binHz, k, MID_FREQUENCY);
+        accumulateBand(BAND_HIGH, magnitudes, bins, binHz, k, HIGH_FREQUENCY);
+
+        mCurrentAmplitude = (float) ((mBandEnergy[0] + mBandEnergy[1] + mBandEnergy[2]) / 3d);
+
+        mNumberOfSamplesInOneSec++;
+        if (mTimeStartSec < 0) {
+            mTimeStartSec = timeMillis;
+        }
+        if ((timeMillis - mTimeStartSec) > 1000) {
+            for (int band = 0; band < 3; band++) {
+                mCurrentAvgEnergyOneSec[band] = mRunningSoundAvg[band] / mNumberOfSamplesInOneSec;
+                mRunningSoundAvg[band] = 0.0;
+            }
+            mNumberOfSamplesInOneSec = 0;
+            mTimeStartSec = timeMillis;
+        }
+    }
+
+    /***
+     * Averages the magnitudes from bin {@code k} up to {@code maxFrequency} into {@code band}.
+     *
+     * @return the first bin of the next band
+     ****/
+    private int accumulateBand(int band, float[] magnitudes, int bins, float binHz, int k, int maxFrequency) {
+        double energySum = 0;
+        int count = 0;
+        while (k < bins && k * binHz < maxFrequency) {
+            energySum += magnitudes[k];
+            count++;
+            k++;
+        }
+        mBandEnergy[band] = count > 0 ? energySum / count : 0;
+        mRunningSoundAvg[band] += mBandEnergy[band];
+        return k;
+    }
+
+    /***
+     * Mean magnitude of {@code band} in the latest spectrum.
+     ****/
+    public double getBandEnergy(int band) {
+        return mBandEnergy[band];
+    }
+
+    /***
+     * Mean magnitude of {@code band} over the last completed second, -1 until one second has passed.
+     ****/
+    public double getAverageBandEnergy(int band) {
+        return mCurrentAvgEnergyOneSec[band];
+    }
+
+    public boolean isBeat(int band) {
+        return mCurrentAvgEnergyOneSec[band] > 0 && mBandEnergy[band] > mCurrentAvgEnergyOneSec[band];
+    }
+
+    public float getCurrentAmplitude() {
+        return mCurrentAmplitude;
+    }
+
+    public void reset() {
+        for (int band = 0; band < 3; band++) {
+            mRunningSoundAvg[band] = 0.0;
+            mBandEnergy[band] = 0.0;
+            mCurrentAvgEnergyOneSec[band] = -1;
+        }
+        mNumberOfSamplesInOneSec = 0;
+        mTimeStartSec = -1;
+        mCurrentAmplitude = 0f;
+    }
+}
@@ -0,0 +1,202 @@
+package call.master.audiohusbandwife;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A sparse on-disk copy of a remote resource. Bytes are written at their final offset with
+ * positional {@link FileChannel} writes, in any order; the downloaded ranges are tracked in memory
+ * and persisted next to the data in a small {@code .index} file on {@link #close()}.
+ * <p>
+ * The instance is its own monitor: writers call {@link #notifyAll()} after every write so readers
+ * can {@link #wait()} for data to arrive.
+ */
+public class CacheFile {
+
+    private static final String INDEX_SUFFIX = ".index";
+
+    private final File mFile;
+    private final File mIndexFile;
+    private final RandomAccessFile mRandomAccessFile;
+    private final FileChannel mChannel;
+
+    // start -> end (exclusive), non overlapping and non adjacent
+    private final TreeMap<Long, Long> mSpans = new TreeMap<Long, Long>();
+    private long mLength = -1;
+
+    public CacheFile(File file) throws IOException {
+        mFile = file;
+        mIndexFile = indexFileOf(file);
+        mRandomAccessFile = new RandomAccessFile(file, "rw");
+        mChannel = mRandomAccessFile.getChannel();
+        loadIndex();
+    }
+
+    static File indexFileOf(File file) {
+        return new File(file.getPath() + INDEX_SUFFIX);
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /***
+     * Total length of the resource, -1 while unknown.
+     ****/
+    public synchronized long getLength() {
+        return mLength;
+    }
+
+    public synchronized void setLength(long length) throws IOException {
+        if (length >= 0 && length != mLength) {
+            mLength = length;
+            mRandomAccessFile.setLength(length);
+        }
+    }
+
+    /***
+     * Number of cached bytes available contiguously from {@code position}, 0 if none.
+     ****/
+    public synchronized long cachedLengthAt(long position) {
+        Map.Entry<Long, Long> span = mSpans.floorEntry(position);
+        if (span == null || span.getValue() <= position) {
+            return 0;
+        }
+        return span.getValue() - position;
+    }
+
+    /***
+     * First offset at or after {@code position} that is not cached, or -1 if everything up to the
+     * known length is.
+     ****/
+    public synchronized long firstGapFrom(long position) {
+        long gap = position + cachedLengthAt(position);
+        if (mLength >= 0 && gap >= mLength) {
+            return -1;
+        }
+        return gap;
+    }
+
+    /***
+     * Start of the next cached span after {@code position}, or -1 if there is none.
+     ****/
+    public synchronized long nextSpanAfter(long position) {
+        Long next = mSpans.higherKey(position);
+        return next == null ? -1 : next;
+    }
+
+    public synchronized boolean isComplete() {
+        return mLength >= 0 && cachedLengthAt(0) >= mLength;
+    }
+
+    /***
+     * Sum of all cached bytes.
+     ****/
+    public synchronized long getCachedBytes() {
+        long total = 0;
+        for (Map.Entry<Long, Long> span : mSpans.entrySet()) {
+            total += span.getValue() - span.getKey();
+        }
+        return total;
+    }
+
+    public void write(long position, byte[] data, int offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+        long at = position;
+        while (buffer.hasRemaining()) {
+            at += mChannel.write(buffer, at);
+        }
+        synchronized (this) {
+            addSpan(position, position + length);
+            notifyAll();
+        }
+    }
+
+    /***
+     * Reads cached bytes only; callers check {@link #cachedLengthAt(long)} first.
+     ****/
+    public int read(long position, byte[] data, int offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+        long at = position;
+        while (buffer.hasRemaining()) {
+            int read = mChannel.read(buffer, at);
+            if (read < 0) {
+                break;
+            }
+            at += read;
+        }
+        return (int) (at - position);
+    }
+
+    private void addSpan(long start, long end) {
+        Map.Entry<Long, Long> before = mSpans.floorEntry(start);
+        if (before != null && before.getValue() >= start) {
+            start = before.getKey();
+            end = Math.max(end, before.getValue());
+        }
+        Map.Entry<Long, Long> after = mSpans.ceilingEntry(start);
+        while (after != null && after.getKey() <= end) {
+            end = Math.max(end, after.getValue());
+            mSpans.remove(after.getKey());
+            after = mSpans.ceilingEntry(start);
+        }
+        mSpans.put(start, end);
+    }
+
+    public synchronized void close() throws IOException {
+        try {
+            saveIndex();
+        } finally {
+            mChannel.close();
+            mRandomAccessFile.close();
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        if (!mIndexFile.exists()) {
+            return;
+        }
+        DataInputStream in = new DataInputStream(new FileInputStream(mIndexFile));
+        try {
+            mLength = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long start = in.readLong();
+                long end = in.readLong();
+                // never trust ranges past what is really on disk
+                if (end <= mRandomAccessFile.length()) {
+                    addSpan(start, end);
+                }
+            }
+        } catch (IOException e) {
+            // a torn index only costs a re-download
+            mSpans.clear();
+            mLength = -1;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void saveIndex() throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(mIndexFile));
+        try {
+            out.writeLong(mLength);
+            out.writeInt(mSpans.size());
+            for (Map.Entry<Long, Long> span : mSpans.entrySet()) {
+                out.writeLong(span.getKey());
+                out.writeLong(span.getValue());
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package call.master.audiohusbandwife;
+
+import android.media.MediaDataSource;
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+
+import java.io.IOException;
+
+/**
+ * Feeds {@link android.media.MediaPlayer} from a {@link CachingDataSource}. The player calls
+ * {@link #readAt} on its own thread, so blocking there while bytes arrive does not stall the UI.
+ */
+@RequiresApi(api = Build.VERSION_CODES.M)
+class CachedMediaDataSource extends MediaDataSource {
+
+    private final CachingDataSource mSource;
+    private boolean mClosed;
+
+    CachedMediaDataSource(CachingDataSource source) {
+        mSource = source;
+    }
+
+    @Override
+    public int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+        return mSource.readAt(position, buffer, offset, size);
+    }
+
+    @Override
+    public long getSize() throws IOException {
+        return mSource.getSize();
+    }
+
+    /***
+     * Releases this player's reference to the shared source once, however often it is called.
+     ****/
+    @Override
+    public synchronized void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        mSource.close();
+    }
+}
@@ -0,0 +1,258 @@
+package call.master.audiohusbandwife;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Random access reads over a remote resource, served from a {@link CacheFile} and filled by a
+ * background download through a {@link RangeFetcher}. Obtain one from {@link AudioCache#open}.
+ * <p>
+ * The downloader streams forward from the position being read and skips ranges that are already
+ * cached. A read far from the current download position restarts it there with a new range
+ * request, so seeking does not wait for everything in between.
+ * <p>
+ * An instance is shared by everyone who opened the same resource and is reference counted by its
+ * {@link AudioCache}; close it exactly once per open.
+ */
+public class CachingDataSource implements Closeable {
+
+    private static final String TAG = CachingDataSource.class.getSimpleName();
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    /***
+     * A read this far ahead of the download position waits instead of re-requesting.
+     ****/
+    private static final long SEEK_THRESHOLD = 256 * 1024;
+
+    private final RangeFetcher mFetcher;
+    private final CacheFile mCache;
+    private final AudioCache mOwner;
+
+    private volatile Thread mDownloader;
+    private volatile InputStream mStream;
+    private volatile boolean mClosed;
+    private volatile long mRequestedPosition;
+    private volatile long mDownloadPosition = -1;
+    private volatile boolean mRestart;
+    private IOException mError;
+    // guarded by the owning AudioCache
+    int mReferences;
+    int mGeneration;
+
+    CachingDataSource(RangeFetcher fetcher, CacheFile cache, AudioCache owner) {
+        mFetcher = fetcher;
+        mCache = cache;
+        mOwner = owner;
+    }
+
+    public CacheFile getCacheFile() {
+        return mCache;
+    }
+
+    /***
+     * Total size of the resource, waiting for the first response if it is not cached yet.
+     * Returns -1 if the server does not report it.
+     ****/
+    public long getSize() throws IOException {
+        synchronized (mCache) {
+            if (mCache.getLength() < 0) {
+                request(0);
+                while (mCache.getLength() < 0 && isDownloading() && mCache.cachedLengthAt(0) == 0) {
+                    waitForData();
+                }
+                throwPendingError();
+            }
+            return mCache.getLength();
+        }
+    }
+
+    /***
+     * Reads up to {@code size} bytes at {@code position}, blocking until at least one is cached.
+     *
+     * @return the number of bytes read, or -1 at the end of the resource
+     ****/
+    public int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+        if (size == 0) {
+            return 0;
+        }
+        synchronized (mCache) {
+            while (true) {
+                if (mClosed) {
+                    throw new IOException("Data source is closed");
+                }
+                long available = mCache.cachedLengthAt(position);
+                if (available > 0) {
+                    return mCache.read(position, buffer, offset, (int) Math.min(available, size));
+                }
+                long length = mCache.getLength();
+                if (length >= 0 && position >= length) {
+                    return -1;
+                }
+                throwPendingError();
+                request(position);
+                waitForData();
+            }
+        }
+    }
+
+    private void throwPendingError() throws IOException {
+        if (mError != null) {
+            IOException error = mError;
+            mError = null;
+            throw error;
+        }
+    }
+
+    private void waitForData() throws IOException {
+        try {
+            mCache.wait(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for data");
+        }
+    }
+
+    private boolean isDownloading() {
+        return mDownloader != null && mDownloader.isAlive();
+    }
+
+    /***
+     * Makes sure the downloader is heading for {@code position}. Called with the cache lock held.
+     ****/
+    private void request(long position) {
+        mRequestedPosition = position;
+        long downloading = mDownloadPosition;
+        if (downloading >= 0 && (position < downloading || position - downloading > SEEK_THRESHOLD)) {
+            mRestart = true;
+        }
+        if (!isDownloading()) {
+            mDownloader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    download();
+                }
+            }, TAG);
+            mDownloader.setDaemon(true);
+            mDownloader.start();
+        }
+    }
+
+    private void download() {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        try {
+            while (!mClosed) {
+                mRestart = false;
+                long position = mCache.firstGapFrom(mRequestedPosition);
+                if (position < 0) {
+                    // everything from the read position on is there, fill holes left by seeks
+                    position = mCache.firstGapFrom(0);
+                }
+                if (position < 0) {
+                    return;
+                }
+                fetchFrom(position, chunk);
+            }
+        } catch (IOException e) {
+            synchronized (mCache) {
+                // closing the stream on shutdown fails the read, that is no error
+                if (!mClosed) {
+                    mError = e;
+                }
+            }
+        } finally {
+            mDownloadPosition = -1;
+            synchronized (mCache) {
+                mCache.notifyAll();
+            }
+        }
+    }
+
+    /***
+     * Downloads from {@code position} until the next cached span, a restart or the end.
+     ****/
+    private void fetchFrom(long position, byte[] chunk) throws IOException {
+        RangeFetcher.Response response = mFetcher.open(position);
+        InputStream stream = response.stream;
+        mStream = stream;
+        try {
+            if (response.totalLength >= 0) {
+                mCache.setLength(response.totalLength);
+            }
+            long start = position;
+            long stop = mCache.nextSpanAfter(position);
+            mDownloadPosition = position;
+            while (!mClosed && !mRestart && (stop < 0 || position < stop)) {
+                int want = stop < 0 ? chunk.length : (int) Math.min(chunk.length, stop - position);
+                int read = stream.read(chunk, 0, want);
+                if (read < 0) {
+                    if (mCache.getLength() < 0) {
+                        // no length was announced, the end of the stream is the end
+                        mCache.setLength(position);
+                    } else if (position == start && position < mCache.getLength()) {
+                        throw new IOException("Server closed the stream at " + position + " of " + mCache.getLength());
+                    }
+                    break;
+                }
+                mCache.write(position, chunk, 0, read);
+                position += read;
+                mDownloadPosition = position;
+            }
+        } finally {
+            mStream = null;
+            stream.close();
+        }
+    }
+
+    /***
+     * Releases this reference. The last one stops the download and hands the cache file back to
+     * its {@link AudioCache}.
+     ****/
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mOwner.release(this);
+    }
+
+    /***
+     * Stops the download without waiting for it: closing the response stream fails a read that is
+     * blocked on a slow link. Called by the {@link AudioCache} when the last reference is released.
+     ****/
+    void stopDownload() {
+        mClosed = true;
+        InputStream stream = mStream;
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        synchronized (mCache) {
+            mCache.notifyAll();
+        }
+    }
+
+    /***
+     * Blocks until the downloader has exited, after which the cache file can be closed.
+     ****/
+    void awaitDownloader() throws InterruptedException {
+        Thread downloader = mDownloader;
+        if (downloader != null) {
+            downloader.join();
+        }
+    }
+
+    /***
+     * Makes a source whose last reference was released usable again, for an {@link AudioCache#open}
+     * that comes in before it was shut down.
+     ****/
+    void reopen() {
+        synchronized (mCache) {
+            mClosed = false;
+            mError = null;
+        }
+    }
+}
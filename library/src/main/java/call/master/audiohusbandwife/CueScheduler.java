@@ -0,0 +1,255 @@
+package call.master.audiohusbandwife;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * Fires callbacks when playback crosses given media times, e.g. subtitle or lyrics events. Cues
+ * are kept in a hashed timer wheel: slot {@code (time / tick) % slots}, so moving the position
+ * only looks at the slots of the ticks passed over, however many cues are scheduled.
+ * <p>
+ * Cues stay registered after firing and fire again when playback crosses them again after a seek
+ * back, until they are cancelled. {@link #getNextCueTimeUs()} tells when to wake up next so the
+ * caller does not have to poll. Not thread safe, use it from the thread that drives playback.
+ */
+public class CueScheduler {
+
+    public interface OnCueListener {
+        public void onCue(Cue cue, long mediaTimeUs);
+    }
+
+    public static class Cue {
+
+        private final long mTimeUs;
+        private final long mTick;
+        private final long mSequence;
+        private final Object mTag;
+        private final OnCueListener mListener;
+        private boolean mCancelled;
+
+        Cue(long timeUs, long tick, long sequence, Object tag, OnCueListener listener) {
+            mTimeUs = timeUs;
+            mTick = tick;
+            mSequence = sequence;
+            mTag = tag;
+            mListener = listener;
+        }
+
+        public long getTimeUs() {
+            return mTimeUs;
+        }
+
+        public Object getTag() {
+            return mTag;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+    }
+
+    private static final long DEFAULT_TICK_US = 10000;
+    private static final int DEFAULT_SLOTS = 512;
+
+    private static final Comparator<Cue> ORDER = new Comparator<Cue>() {
+        @Override
+        public int compare(Cue a, Cue b) {
+            if (a.mTimeUs != b.mTimeUs) {
+                return a.mTimeUs < b.mTimeUs ? -1 : 1;
+            }
+            return a.mSequence < b.mSequence ? -1 : (a.mSequence > b.mSequence ? 1 : 0);
+        }
+    };
+
+    private final long mTickUs;
+    private final ArrayList<Cue>[] mSlots;
+    private final ArrayList<Cue> mDue = new ArrayList<Cue>();
+    private long mSequence;
+    private int mSize;
+    private long mPositionUs;
+    // nothing has fired at the current position yet, after a seek or before the first advance
+    private boolean mPositionPending = true;
+
+    public CueScheduler() {
+        this(DEFAULT_TICK_US, DEFAULT_SLOTS);
+    }
+
+    /***
+     * @param tickUs
+     *            media time covered by one slot
+     * @param slots
+     *            slots in the wheel; cues further than {@code tickUs * slots} ahead share slots
+     *            with nearer ones and are skipped over until their turn
+     ****/
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public CueScheduler(long tickUs, int slots) {
+        if (tickUs <= 0 || slots <= 0) {
+            throw new IllegalArgumentException("Tick and slot count must be positive");
+        }
+        mTickUs = tickUs;
+        mSlots = new ArrayList[slots];
+        for (int i = 0; i < slots; i++) {
+            mSlots[i] = new ArrayList<Cue>();
+        }
+    }
+
+    public Cue schedule(long timeUs, Object tag, OnCueListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener cannot be null");
+        }
+        long tick = tickOf(timeUs);
+        Cue cue = new Cue(timeUs, tick, mSequence++, tag, listener);
+        slotOf(tick).add(cue);
+        mSize++;
+        return cue;
+    }
+
+    public void cancel(Cue cue) {
+        if (!cue.mCancelled && slotOf(cue.mTick).remove(cue)) {
+            cue.mCancelled = true;
+            mSize--;
+        }
+    }
+
+    public void clear() {
+        for (ArrayList<Cue> slot : mSlots) {
+            for (Cue cue : slot) {
+                cue.mCancelled = true;
+            }
+            slot.clear();
+        }
+        mSize = 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long getPositionUs() {
+        return mPositionUs;
+    }
+
+    /***
+     * Moves to {@code mediaTimeUs} without firing the cues in between. Cues at exactly
+     * {@code mediaTimeUs} fire on the next {@link #advanceTo(long)}.
+     ****/
+    public void seekTo(long mediaTimeUs) {
+        mPositionUs = mediaTimeUs;
+        mPositionPending = true;
+    }
+
+    /***
+     * Moves to {@code mediaTimeUs}, firing in time order every cue after the previous position and
+     * up to and including this one. Right after a seek, and before the first advance, cues at the
+     * previous position itself fire too. Moving backwards is a seek and fires nothing.
+     *
+     * @return number of cues fired
+     ****/
+    public int advanceTo(long mediaTimeUs) {
+        long from = mPositionUs;
+        boolean inclusive = mPositionPending;
+        if (mediaTimeUs < from) {
+            seekTo(mediaTimeUs);
+            return 0;
+        }
+        mPositionUs = mediaTimeUs;
+        mPositionPending = false;
+        if ((mediaTimeUs == from && !inclusive) || mSize == 0) {
+            return 0;
+        }
+
+        long firstTick = tickOf(from);
+        long lastTick = tickOf(mediaTimeUs);
+        if (lastTick - firstTick >= mSlots.length) {
+            // a long jump covers the whole wheel, visit each slot once
+            firstTick = 0;
+            lastTick = mSlots.length - 1;
+        }
+        mDue.clear();
+        for (long tick = firstTick; tick <= lastTick; tick++) {
+            for (Cue cue : slotOf(tick)) {
+                if ((cue.mTimeUs > from || (inclusive && cue.mTimeUs == from)) && cue.mTimeUs <= mediaTimeUs) {
+                    mDue.add(cue);
+                }
+            }
+        }
+        if (mDue.isEmpty()) {
+            return 0;
+        }
+        Collections.sort(mDue, ORDER);
+        // listeners may schedule or cancel, so fire from a copy
+        Cue[] due = mDue.toArray(new Cue[mDue.size()]);
+        mDue.clear();
+        int fired = 0;
+        for (Cue cue : due) {
+            if (!cue.mCancelled) {
+                cue.mListener.onCue(cue, mediaTimeUs);
+                fired++;
+            }
+        }
+        return fired;
+    }
+
+    /***
+     * Like {@link #advanceTo(long)} for a position sampled from a clock that can step back slightly,
+     * e.g. an interpolated position corrected by a fresh timestamp: a step back of less than
+     * {@code toleranceUs} is ignored instead of taken as a seek, so the cues just passed do not
+     * fire twice.
+     *
+     * @return number of cues fired
+     ****/
+    public int followTo(long mediaTimeUs, long toleranceUs) {
+        if (mediaTimeUs < mPositionUs && mPositionUs - mediaTimeUs < toleranceUs) {
+            return 0;
+        }
+        return advanceTo(mediaTimeUs);
+    }
+
+    /***
+     * Media time of the first cue after the current position, or at it if that has not fired yet;
+     * -1 if there is none.
+     ****/
+    public long getNextCueTimeUs() {
+        if (mSize == 0) {
+            return -1;
+        }
+        long tick = tickOf(mPositionUs);
+        // one turn of the wheel, from the current tick on
+        for (int i = 0; i < mSlots.length; i++, tick++) {
+            long next = Long.MAX_VALUE;
+            for (Cue cue : slotOf(tick)) {
+                if (cue.mTick == tick && isAhead(cue) && cue.mTimeUs < next) {
+                    next = cue.mTimeUs;
+                }
+            }
+            if (next != Long.MAX_VALUE) {
+                return next;
+            }
+        }
+        // nothing within a turn, fall back to a full scan
+        long next = Long.MAX_VALUE;
+        for (ArrayList<Cue> slot : mSlots) {
+            for (Cue cue : slot) {
+                if (isAhead(cue) && cue.mTimeUs < next) {
+                    next = cue.mTimeUs;
+                }
+            }
+        }
+        return next == Long.MAX_VALUE ? -1 : next;
+    }
+
+    private boolean isAhead(Cue cue) {
+        return cue.mTimeUs > mPositionUs || (mPositionPending && cue.mTimeUs == mPositionUs);
+    }
+
+    private long tickOf(long timeUs) {
+        // floor, so negative times land in the right tick too
+        return timeUs >= 0 ? timeUs / mTickUs : (timeUs - mTickUs + 1) / mTickUs;
+    }
+
+    private ArrayList<Cue> slotOf(long tick) {
+        int index = (int) (tick % mSlots.length);
+        return mSlots[index < 0 ? index + mSlots.length : index];
+    }
+}
@@ -0,0 +1,95 @@
+package call.master.audiohusbandwife;
+
+/**
+ * In-place iterative radix-2 FFT on split real/imaginary float arrays. Bit reversal and twiddle
+ * factors are computed once per size, so a transform does not allocate.
+ */
+public class Fft {
+
+    private final int mSize;
+    private final int[] mBitReverse;
+    private final float[] mCos;
+    private final float[] mSin;
+
+    public Fft(int size) {
+        if (size < 2 || (size & (size - 1)) != 0) {
+            throw new IllegalArgumentException("FFT size must be a power of two, was " + size);
+        }
+        mSize = size;
+
+        int bits = Integer.numberOfTrailingZeros(size);
+        mBitReverse = new int[size];
+        for (int i = 0; i < size; i++) {
+            mBitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+
+        mCos = new float[size / 2];
+        mSin = new float[size / 2];
+        for (int i = 0; i < size / 2; i++) {
+            double angle = 2 * Math.PI * i / size;
+            mCos[i] = (float) Math.cos(angle);
+            mSin[i] = (float) Math.sin(angle);
+        }
+    }
+
+    public int getSize() {
+        return mSize;
+    }
+
+    /***
+     * Forward transform, X[k] = sum x[n] e^(-2 pi i k n / N). Not normalized.
+     ****/
+    public void forward(float[] re, float[] im) {
+        transform(re, im, -1f);
+    }
+
+    /***
+     * Inverse transform, scaled by 1/N so that {@code inverse(forward(x)) == x}.
+     ****/
+    public void inverse(float[] re, float[] im) {
+        transform(re, im, 1f);
+        float scale = 1f / mSize;
+        for (int i = 0; i < mSize; i++) {
+            re[i] *= scale;
+            im[i] *= scale;
+        }
+    }
+
+    private void transform(float[] re, float[] im, float sign) {
+        if (re.length < mSize || im.length < mSize) {
+            throw new IllegalArgumentException("Buffers must hold at least " + mSize + " values");
+        }
+        int n = mSize;
+
+        for (int i = 0; i < n; i++) {
+            int j = mBitReverse[i];
+            if (j > i) {
+                float t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+
+        for (int len = 2; len <= n; len <<= 1) {
+            int half = len >> 1;
+            int step = n / len;
+            for (int i = 0; i < n; i += len) {
+                for (int j = 0, t = 0; j < half; j++, t += step) {
+                    float wr = mCos[t];
+                    float wi = sign * mSin[t];
+                    int a = i + j;
+                    int b = a + half;
+                    float xr = re[b] * wr - im[b] * wi;
+                    float xi = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package call.master.audiohusbandwife;
+
+/**
+ * Analysis windows for {@link Fft}. All windows are periodic (DFT-even), which is the form that
+ * overlap-adds to a constant and the one spectral analysis wants.
+ */
+public enum FftWindow {
+    RECTANGULAR, HANN, HAMMING;
+
+    public float[] coefficients(int size) {
+        float[] window = new float[size];
+        for (int i = 0; i < size; i++) {
+            double cos = Math.cos(2 * Math.PI * i / size);
+            switch (this) {
+                case HANN:
+                    window[i] = (float) (0.5 - 0.5 * cos);
+                    break;
+                case HAMMING:
+                    window[i] = (float) (0.54 - 0.46 * cos);
+                    break;
+                default:
+                    window[i] = 1f;
+                    break;
+            }
+        }
+        return window;
+    }
+}
@@ -0,0 +1,71 @@
+package call.master.audiohusbandwife;
+
+/**
+ * Second order Butterworth high-pass (RBJ biquad). Removes rumble, handling noise and mains hum
+ * below the voice band.
+ */
+public class HighPassFilter implements AudioProcessor {
+
+    private static final float DEFAULT_CUTOFF_HZ = 100f;
+
+    private final float mCutoffHz;
+
+    private double b0, b1, b2, a1, a2;
+    private double x1, x2, y1, y2;
+
+    public HighPassFilter() {
+        this(DEFAULT_CUTOFF_HZ);
+    }
+
+    public HighPassFilter(float cutoffHz) {
+        if (cutoffHz <= 0) {
+            throw new IllegalArgumentException("Cutoff frequency must be positive");
+        }
+        mCutoffHz = cutoffHz;
+    }
+
+    public float getCutoffHz() {
+        return mCutoffHz;
+    }
+
+    @Override
+    public void prepare(int sampleRate) {
+        if (mCutoffHz >= sampleRate / 2f) {
+            throw new IllegalArgumentException("Cutoff frequency must be below Nyquist");
+        }
+        double w0 = 2 * Math.PI * mCutoffHz / sampleRate;
+        double cos = Math.cos(w0);
+        double alpha = Math.sin(w0) / (2 * Math.sqrt(0.5));
+        double a0 = 1 + alpha;
+
+        b0 = (1 + cos) / 2 / a0;
+        b1 = -(1 + cos) / a0;
+        b2 = (1 + cos) / 2 / a0;
+        a1 = -2 * cos / a0;
+        a2 = (1 - alpha) / a0;
+        reset();
+    }
+
+    @Override
+    public void process(float[] buffer, int offset, int length) {
+        double x1 = this.x1, x2 = this.x2, y1 = this.y1, y2 = this.y2;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            double x = buffer[i];
+            double y = b0 * x + b1 * x1 + b2 * x2 - a1 * y1 - a2 * y2;
+            x2 = x1;
+            x1 = x;
+            y2 = y1;
+            y1 = y;
+            buffer[i] = (float) y;
+        }
+        this.x1 = x1;
+        this.x2 = x2;
+        this.y1 = y1;
+        this.y2 = y2;
+    }
+
+    @Override
+    public void reset() {
+        x1 = x2 = y1 = y2 = 0;
+    }
+}
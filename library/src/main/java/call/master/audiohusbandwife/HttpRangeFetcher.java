@@ -0,0 +1,96 @@
+package call.master.audiohusbandwife;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * {@link RangeFetcher} over HTTP(S) using {@code Range: bytes=n-}. Servers that ignore the header
+ * and answer 200 are handled by skipping up to the requested offset.
+ */
+public class HttpRangeFetcher implements RangeFetcher {
+
+    private static final int CONNECT_TIMEOUT = 15000;
+    private static final int READ_TIMEOUT = 15000;
+
+    private final URL mUrl;
+
+    public HttpRangeFetcher(String url) throws IOException {
+        mUrl = new URL(url);
+    }
+
+    @Override
+    public Response open(long position) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) mUrl.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        // compressed transfer would break byte offsets
+        connection.setRequestProperty("Accept-Encoding", "identity");
+        if (position > 0) {
+            connection.setRequestProperty("Range", "bytes=" + position + "-");
+        }
+
+        int code = connection.getResponseCode();
+        if (code == HttpURLConnection.HTTP_PARTIAL) {
+            return new Response(disconnectOnClose(connection), parseTotalLength(connection.getHeaderField("Content-Range")));
+        }
+        if (code == HttpURLConnection.HTTP_OK) {
+            InputStream stream = disconnectOnClose(connection);
+            skipFully(stream, position);
+            return new Response(stream, parseLong(connection.getHeaderField("Content-Length")));
+        }
+        connection.disconnect();
+        throw new IOException("Unexpected HTTP " + code + " for " + mUrl);
+    }
+
+    /***
+     * Closing the returned stream drops the connection, which also unblocks a read in progress on
+     * another thread instead of leaving it to the read timeout.
+     ****/
+    private static InputStream disconnectOnClose(final HttpURLConnection connection) throws IOException {
+        return new FilterInputStream(connection.getInputStream()) {
+            @Override
+            public void close() throws IOException {
+                connection.disconnect();
+                super.close();
+            }
+        };
+    }
+
+    /***
+     * Parses the total from "bytes 100-199/1000", -1 for "bytes 100-199/*".
+     ****/
+    static long parseTotalLength(String contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+        int slash = contentRange.lastIndexOf('/');
+        return slash < 0 ? -1 : parseLong(contentRange.substring(slash + 1).trim());
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void skipFully(InputStream stream, long count) throws IOException {
+        while (count > 0) {
+            long skipped = stream.skip(count);
+            if (skipped <= 0) {
+                if (stream.read() < 0) {
+                    throw new IOException("End of stream while skipping to offset");
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package call.master.audiohusbandwife;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Measured loudness of an audio file, kept in a small {@code .loudness} sidecar next to it so the
+ * player can level it without analyzing it again. Written by {@link AudioHusband} while recording
+ * and by {@link LoudnessScanTask} for existing files, applied by {@link AudioWife}.
+ */
+public class LoudnessMetadata {
+
+    public static final float DEFAULT_TARGET_LUFS = -16f;
+    public static final float DEFAULT_CEILING_DB = -1f;
+
+    private static final String SIDECAR_SUFFIX = ".loudness";
+    private static final int VERSION = 1;
+
+    private final float mIntegratedLoudness;
+    private final float mSamplePeak;
+
+    /***
+     * @param integratedLoudness
+     *            in LUFS, negative infinity for silence
+     * @param samplePeak
+     *            highest absolute sample value, 1 being full scale
+     ****/
+    public LoudnessMetadata(float integratedLoudness, float samplePeak) {
+        mIntegratedLoudness = integratedLoudness;
+        mSamplePeak = samplePeak;
+    }
+
+    public float getIntegratedLoudness() {
+        return mIntegratedLoudness;
+    }
+
+    public float getSamplePeak() {
+        return mSamplePeak;
+    }
+
+    /***
+     * Linear gain that brings the audio to {@code targetLufs} without pushing its peak above
+     * {@code ceilingDb}; 1 for silence.
+     ****/
+    public float getGain(float targetLufs, float ceilingDb) {
+        if (Float.isInfinite(mIntegratedLoudness) || Float.isNaN(mIntegratedLoudness)) {
+            return 1f;
+        }
+        float gain = (float) Math.pow(10, (targetLufs - mIntegratedLoudness) / 20);
+        float ceiling = (float) Math.pow(10, ceilingDb / 20);
+        if (mSamplePeak > 0 && mSamplePeak * gain > ceiling) {
+            gain = ceiling / mSamplePeak;
+        }
+        return gain;
+    }
+
+    public float getGain() {
+        return getGain(DEFAULT_TARGET_LUFS, DEFAULT_CEILING_DB);
+    }
+
+    public static File sidecarOf(File audio) {
+        return new File(audio.getPath() + SIDECAR_SUFFIX);
+    }
+
+    /***
+     * Writes the sidecar of {@code audio}, replacing an older one.
+     ****/
+    public void write(File audio) throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(sidecarOf(audio)));
+        try {
+            out.writeInt(VERSION);
+            out.writeFloat(mIntegratedLoudness);
+            out.writeFloat(mSamplePeak);
+        } finally {
+            out.close();
+        }
+    }
+
+    /***
+     * @return the metadata stored next to {@code audio}, null if there is none or it is unreadable
+     *         or older than the audio
+     ****/
+    public static LoudnessMetadata read(File audio) {
+        File sidecar = sidecarOf(audio);
+        if (!sidecar.exists() || sidecar.lastModified() < audio.lastModified()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(sidecar));
+            try {
+                if (in.readInt() != VERSION) {
+                    return null;
+                }
+                return new LoudnessMetadata(in.readFloat(), in.readFloat());
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package call.master.audiohusbandwife;
+
+/**
+ * Integrated loudness meter after ITU-R BS.1770 / EBU R128 for mono audio. The signal is K-weighted
+ * (a high shelf for the head, a high-pass for the low end), its mean square is taken over 400 ms
+ * blocks overlapping by 75%, and the integrated value is the mean of the blocks that pass the
+ * -70 LUFS absolute gate and then the gate 10 LU below the absolutely gated level.
+ * <p>
+ * Works as a pass-through {@link AudioProcessor}, so it can sit at the end of a capture chain or be
+ * fed by a {@link PcmDecoder}. Only the per block energies are kept, ten values per second.
+ */
+public class LoudnessMeter implements AudioProcessor {
+
+    private static final double ABSOLUTE_GATE = -70;
+    private static final double RELATIVE_GATE = -10;
+    // makes a 997 Hz sine read its RMS level, compensates the K-weighting gain there
+    private static final double OFFSET = -0.691;
+    private static final int SUB_BLOCK_MILLIS = 100;
+    private static final int SUB_BLOCKS = 4;
+
+    // K-weighting filters, high shelf then high-pass
+    private double sb0, sb1, sb2, sa1, sa2;
+    private double ha1, ha2;
+    private double sx1, sx2, sy1, sy2;
+    private double hy1, hy2;
+
+    private int mSubBlockSize;
+    private int mSubBlockFill;
+    private double mSubBlockSum;
+    private final double[] mSubBlocks = new double[SUB_BLOCKS];
+    private int mSubBlockCount;
+
+    private double[] mBlocks = new double[64];
+    private int mBlockCount;
+    private float mPeak;
+
+    @Override
+    public void prepare(int sampleRate) {
+        double k = Math.tan(Math.PI * 1681.974450955533 / sampleRate);
+        double q = 0.7071752369554196;
+        double vh = Math.pow(10, 3.999843853973347 / 20);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1 + k / q + k * k;
+        sb0 = (vh + vb * k / q + k * k) / a0;
+        sb1 = 2 * (k * k - vh) / a0;
+        sb2 = (vh - vb * k / q + k * k) / a0;
+        sa1 = 2 * (k * k - 1) / a0;
+        sa2 = (1 - k / q + k * k) / a0;
+
+        k = Math.tan(Math.PI * 38.13547087602444 / sampleRate);
+        q = 0.5003270373238773;
+        a0 = 1 + k / q + k * k;
+        ha1 = 2 * (k * k - 1) / a0;
+        ha2 = (1 - k / q + k * k) / a0;
+
+        mSubBlockSize = sampleRate * SUB_BLOCK_MILLIS / 1000;
+        reset();
+    }
+
+    /***
+     * Measures the samples, leaving them untouched.
+     ****/
+    @Override
+    public void process(float[] buffer, int offset, int length) {
+        double sx1 = this.sx1, sx2 = this.sx2, sy1 = this.sy1, sy2 = this.sy2;
+        double hy1 = this.hy1, hy2 = this.hy2;
+        float peak = mPeak;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            double x = buffer[i];
+            float abs = Math.abs(buffer[i]);
+            if (abs > peak) {
+                peak = abs;
+            }
+            double s = sb0 * x + sb1 * sx1 + sb2 * sx2 - sa1 * sy1 - sa2 * sy2;
+            sx2 = sx1;
+            sx1 = x;
+            // the high-pass numerator is 1, -2, 1, fed by the shelf output
+            double h = s - 2 * sy1 + sy2 - ha1 * hy1 - ha2 * hy2;
+            sy2 = sy1;
+            sy1 = s;
+            hy2 = hy1;
+            hy1 = h;
+
+            mSubBlockSum += h * h;
+            if (++mSubBlockFill == mSubBlockSize) {
+                addSubBlock();
+            }
+        }
+        this.sx1 = sx1;
+        this.sx2 = sx2;
+        this.sy1 = sy1;
+        this.sy2 = sy2;
+        this.hy1 = hy1;
+        this.hy2 = hy2;
+        mPeak = peak;
+    }
+
+    private void addSubBlock() {
+        mSubBlocks[mSubBlockCount++ % SUB_BLOCKS] = mSubBlockSum;
+        mSubBlockSum = 0;
+        mSubBlockFill = 0;
+        if (mSubBlockCount < SUB_BLOCKS) {
+            return;
+        }
+        double sum = 0;
+        for (double subBlock : mSubBlocks) {
+            sum += subBlock;
+        }
+        if (mBlockCount == mBlocks.length) {
+            double[] blocks = new double[mBlocks.length * 2];
+            System.arraycopy(mBlocks, 0, blocks, 0, mBlockCount);
+            mBlocks = blocks;
+        }
+        mBlocks[mBlockCount++] = sum / (SUB_BLOCKS * mSubBlockSize);
+    }
+
+    /***
+     * Gated loudness of everything measured so far in LUFS, negative infinity if there is not a
+     * single block above the absolute gate (silence, or less than 400 ms of audio).
+     ****/
+    public double getIntegratedLoudness() {
+        double absoluteGate = energyOf(ABSOLUTE_GATE);
+        double sum = 0;
+        int count = 0;
+        for (int i = 0; i < mBlockCount; i++) {
+            if (mBlocks[i] > absoluteGate) {
+                sum += mBlocks[i];
+                count++;
+            }
+        }
+        if (count == 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        double relativeGate = sum / count * Math.pow(10, RELATIVE_GATE / 10);
+        sum = 0;
+        count = 0;
+        for (int i = 0; i < mBlockCount; i++) {
+            if (mBlocks[i] > absoluteGate && mBlocks[i] > relativeGate) {
+                sum += mBlocks[i];
+                count++;
+            }
+        }
+        return loudnessOf(sum / count);
+    }
+
+    /***
+     * Loudness of the last 400 ms in LUFS, negative infinity before the first block completes.
+     ****/
+    public double getMomentaryLoudness() {
+        return mBlockCount == 0 ? Double.NEGATIVE_INFINITY : loudnessOf(mBlocks[mBlockCount - 1]);
+    }
+
+    /***
+     * Highest absolute sample value seen, 1 being full scale.
+     ****/
+    public float getSamplePeak() {
+        return mPeak;
+    }
+
+    /***
+     * The measurement in the form stored next to audio files.
+     ****/
+    public LoudnessMetadata getMetadata() {
+        return new LoudnessMetadata((float) getIntegratedLoudness(), mPeak);
+    }
+
+    private static double loudnessOf(double energy) {
+        return OFFSET + 10 * Math.log10(energy);
+    }
+
+    private static double energyOf(double loudness) {
+        return Math.pow(10, (loudness - OFFSET) / 10);
+    }
+
+    /***
+     * Forgets the measurement.
+     ****/
+    @Override
+    public void reset() {
+        sx1 = sx2 = sy1 = sy2 = 0;
+        hy1 = hy2 = 0;
+        mSubBlockFill = 0;
+        mSubBlockSum = 0;
+        mSubBlockCount = 0;
+        mBlockCount = 0;
+        mPeak = 0;
+    }
+}
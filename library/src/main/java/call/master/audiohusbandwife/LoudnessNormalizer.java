@@ -0,0 +1,101 @@
+package call.master.audiohusbandwife;
+
+/**
+ * Two pass loudness normalization. During the first pass {@link #process} only measures, with a
+ * {@link LoudnessMeter}. {@link #finishAnalysis()} then fixes a gain that brings the integrated
+ * loudness to the target without pushing the peak above the ceiling, and every following
+ * {@link #process} applies it.
+ */
+public class LoudnessNormalizer implements AudioProcessor {
+
+    private final float mTargetLufs;
+    private final float mCeilingDb;
+    private final LoudnessMeter mMeter = new LoudnessMeter();
+
+    private LoudnessMetadata mMeasured;
+    private float mGain = 1f;
+
+    /***
+     * Normalizes to the level {@link AudioWife} plays at by default, so normalized files need no
+     * gain on playback.
+     ****/
+    public LoudnessNormalizer() {
+        this(LoudnessMetadata.DEFAULT_TARGET_LUFS, LoudnessMetadata.DEFAULT_CEILING_DB);
+    }
+
+    /***
+     * @param targetLufs
+     *            integrated loudness to reach
+     * @param ceilingDb
+     *            highest sample peak allowed after the gain, in dBFS
+     ****/
+    public LoudnessNormalizer(float targetLufs, float ceilingDb) {
+        mTargetLufs = targetLufs;
+        mCeilingDb = ceilingDb;
+    }
+
+    @Override
+    public void prepare(int sampleRate) {
+        mMeter.prepare(sampleRate);
+        reset();
+    }
+
+    @Override
+    public void process(float[] buffer, int offset, int length) {
+        if (mMeasured == null) {
+            mMeter.process(buffer, offset, length);
+            return;
+        }
+        float gain = mGain;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            buffer[i] *= gain;
+        }
+    }
+
+    /***
+     * Ends the measuring pass and switches to applying the gain.
+     *
+     * @return the linear gain that will be applied
+     ****/
+    public float finishAnalysis() {
+        mMeasured = mMeter.getMetadata();
+        mGain = mMeasured.getGain(mTargetLufs, mCeilingDb);
+        return mGain;
+    }
+
+    /***
+     * Integrated loudness of the analyzed audio in LUFS, negative infinity for silence.
+     ****/
+    public double getMeasuredLoudness() {
+        return mMeter.getIntegratedLoudness();
+    }
+
+    /***
+     * Loudness of the normalized output, to store next to it. Null before the analysis finished.
+     ****/
+    public LoudnessMetadata getOutputMetadata() {
+        if (mMeasured == null) {
+            return null;
+        }
+        float gainDb = (float) (20 * Math.log10(mGain));
+        return new LoudnessMetadata(mMeasured.getIntegratedLoudness() + gainDb, mMeasured.getSamplePeak() * mGain);
+    }
+
+    public float getGain() {
+        return mGain;
+    }
+
+    public boolean isAnalyzed() {
+        return mMeasured != null;
+    }
+
+    /***
+     * Forgets the measurement and returns to the analysis pass.
+     ****/
+    @Override
+    public void reset() {
+        mMeter.reset();
+        mMeasured = null;
+        mGain = 1f;
+    }
+}
@@ -0,0 +1,67 @@
+package call.master.audiohusbandwife;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+
+import java.io.File;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Measures the loudness of an existing file and writes its {@link LoudnessMetadata} sidecar, e.g.
+ * for notes recorded before metering was turned on. Runs as an {@link AudioProcessingQueue.Task}.
+ */
+@RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
+public class LoudnessScanTask implements AudioProcessingQueue.Task {
+
+    private final Context mContext;
+    private final File mFile;
+    private LoudnessMetadata mMetadata;
+
+    public LoudnessScanTask(Context context, File file) {
+        mContext = context.getApplicationContext();
+        mFile = file;
+    }
+
+    /***
+     * The measurement, null until the job completed.
+     ****/
+    public LoudnessMetadata getMetadata() {
+        return mMetadata;
+    }
+
+    @Override
+    public void run(final AudioProcessingQueue.Job job) throws Exception {
+        final LoudnessMeter meter = new LoudnessMeter();
+        final PcmDecoder decoder = new PcmDecoder(mContext, Uri.fromFile(mFile));
+        decoder.decode(new AudioProcessor() {
+            @Override
+            public void prepare(int sampleRate) {
+                meter.prepare(sampleRate);
+            }
+
+            @Override
+            public void process(float[] buffer, int offset, int length) {
+                if (job.isCancelled()) {
+                    decoder.cancel();
+                    return;
+                }
+                meter.process(buffer, offset, length);
+                long duration = decoder.getDurationUs();
+                if (duration > 0) {
+                    job.setProgress(Math.min(1f, (float) decoder.getPositionUs() / duration));
+                }
+            }
+
+            @Override
+            public void reset() {
+            }
+        });
+        if (job.isCancelled()) {
+            throw new CancellationException();
+        }
+        mMetadata = meter.getMetadata();
+        mMetadata.write(mFile);
+    }
+}
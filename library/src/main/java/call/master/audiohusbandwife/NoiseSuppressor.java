@@ -0,0 +1,185 @@
+package call.master.audiohusbandwife;
+
+import java.util.Arrays;
+
+/**
+ * Spectral-subtraction noise suppressor.
+ * <p>
+ * The noise power spectrum is averaged over the leading silence of the recording (the first
+ * {@code learnMillis} of audio, passed through untouched) and is then subtracted from every frame.
+ * Frames are Hann windowed with 50% overlap and resynthesized by overlap-add, which delays the
+ * output by {@link #getLatency()} samples.
+ */
+public class NoiseSuppressor implements AudioProcessor {
+
+    private static final int DEFAULT_LEARN_MILLIS = 250;
+    private static final float DEFAULT_OVER_SUBTRACTION = 2f;
+    private static final float DEFAULT_GAIN_FLOOR = 0.1f;
+
+    private final int mLearnMillis;
+    private final float mOverSubtraction;
+    private final float mGainFloorSquared;
+
+    private Fft mFft;
+    private int mFrameSize;
+    private int mHop;
+
+    private float[] mWindow;
+    private float[] mInput;
+    private float[] mOverlap;
+    private float[] mOutput;
+    private float[] mRe;
+    private float[] mIm;
+    private float[] mNoise;
+
+    private int mFill;
+    private int mFrames;
+    private int mLearnFrames;
+    private int mLearntFrames;
+
+    public NoiseSuppressor() {
+        this(DEFAULT_LEARN_MILLIS, DEFAULT_OVER_SUBTRACTION, DEFAULT_GAIN_FLOOR);
+    }
+
+    /***
+     * @param learnMillis
+     *            length of the leading silence used to estimate the noise profile
+     * @param overSubtraction
+     *            multiple of the noise estimate subtracted from each bin, above 1 reduces musical noise
+     * @param gainFloor
+     *            lowest amplitude gain applied to a bin, between 0 and 1
+     ****/
+    public NoiseSuppressor(int learnMillis, float overSubtraction, float gainFloor) {
+        if (learnMillis <= 0) {
+            throw new IllegalArgumentException("Learning time must be positive");
+        }
+        if (gainFloor < 0 || gainFloor > 1) {
+            throw new IllegalArgumentException("Gain floor must be between 0 and 1");
+        }
+        mLearnMillis = learnMillis;
+        mOverSubtraction = overSubtraction;
+        mGainFloorSquared = gainFloor * gainFloor;
+    }
+
+    /***
+     * Number of samples the output lags behind the input.
+     ****/
+    public int getLatency() {
+        return mFrameSize;
+    }
+
+    public boolean isNoiseProfileReady() {
+        return mLearnFrames > 0 && mLearntFrames >= mLearnFrames;
+    }
+
+    @Override
+    public void prepare(int sampleRate) {
+        // ~32 ms frames: 512 at 16 kHz, 1024 at 44.1/48 kHz
+        int frameSize = Integer.highestOneBit(Math.max(64, sampleRate / 31));
+        if (mFft == null || mFft.getSize() != frameSize) {
+            mFft = new Fft(frameSize);
+            mFrameSize = frameSize;
+            mHop = frameSize / 2;
+
+            // periodic Hann sums to exactly one at 50% overlap
+            mWindow = FftWindow.HANN.coefficients(frameSize);
+            mInput = new float[frameSize];
+            mOverlap = new float[frameSize];
+            mOutput = new float[mHop];
+            mRe = new float[frameSize];
+            mIm = new float[frameSize];
+            mNoise = new float[frameSize / 2 + 1];
+        }
+        mLearnFrames = Math.max(1, (int) ((long) mLearnMillis * sampleRate / 1000 / mHop));
+        reset();
+    }
+
+    @Override
+    public void process(float[] buffer, int offset, int length) {
+        int start = mFrameSize - mHop;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            mInput[start + mFill] = buffer[i];
+            buffer[i] = mOutput[mFill];
+            if (++mFill == mHop) {
+                processFrame();
+                mFill = 0;
+            }
+        }
+    }
+
+    private void processFrame() {
+        int n = mFrameSize;
+        int bins = n / 2 + 1;
+        for (int i = 0; i < n; i++) {
+            mRe[i] = mInput[i] * mWindow[i];
+            mIm[i] = 0f;
+        }
+        mFft.forward(mRe, mIm);
+
+        boolean learning = mLearntFrames < mLearnFrames;
+        if (learning && mFrames < 1) {
+            // the first frame is half zero padding and would bias the noise estimate low
+            mFrames++;
+        } else if (learning) {
+            for (int k = 0; k < bins; k++) {
+                mNoise[k] += (mRe[k] * mRe[k] + mIm[k] * mIm[k]) / mLearnFrames;
+            }
+            mLearntFrames++;
+        } else {
+            for (int k = 0; k < bins; k++) {
+                float power = mRe[k] * mRe[k] + mIm[k] * mIm[k];
+                float gainSquared = power > 0f ? 1f - mOverSubtraction * mNoise[k] / power : 0f;
+                if (gainSquared < mGainFloorSquared) {
+                    gainSquared = mGainFloorSquared;
+                }
+                float gain = (float) Math.sqrt(gainSquared);
+                mRe[k] *= gain;
+                mIm[k] *= gain;
+                if (k > 0 && k < n / 2) {
+                    // keep the spectrum conjugate symmetric so the output stays real
+                    mRe[n - k] *= gain;
+                    mIm[n - k] *= gain;
+                }
+            }
+        }
+        mFft.inverse(mRe, mIm);
+
+        for (int i = 0; i < n; i++) {
+            mOverlap[i] += mRe[i];
+        }
+        System.arraycopy(mOverlap, 0, mOutput, 0, mHop);
+        System.arraycopy(mOverlap, mHop, mOverlap, 0, n - mHop);
+        for (int i = n - mHop; i < n; i++) {
+            mOverlap[i] = 0f;
+        }
+        System.arraycopy(mInput, mHop, mInput, 0, n - mHop);
+    }
+
+    /***
+     * Clears the signal history and forgets the learnt noise profile.
+     ****/
+    @Override
+    public void reset() {
+        if (mFft == null) {
+            return;
+        }
+        resetHistory();
+        Arrays.fill(mNoise, 0f);
+        mLearntFrames = 0;
+    }
+
+    /***
+     * Clears the overlap-add and input history but keeps the learnt noise profile, so the stage can
+     * be bypassed for a while and switched back on without treating speech as noise.
+     ****/
+    public void resetHistory() {
+        if (mFft == null) {
+            return;
+        }
+        Arrays.fill(mInput, 0f);
+        Arrays.fill(mOverlap, 0f);
+        Arrays.fill(mOutput, 0f);
+        mFill = 0;
+        mFrames = 0;
+    }
+}
@@ -0,0 +1,179 @@
+package call.master.audiohusbandwife;
+
+import android.content.Context;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.net.Uri;
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Decodes the first audio track of a Uri with {@link MediaCodec} and streams it, down-mixed to mono
+ * float PCM, into an {@link AudioProcessor}. {@link #decode(AudioProcessor)} blocks until the end
+ * of the stream, so call it off the main thread.
+ */
+@RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
+public class PcmDecoder {
+
+    private static final long TIMEOUT_US = 10000;
+
+    private final Context mContext;
+    private final Uri mUri;
+    private volatile boolean mCancelled;
+    private volatile long mDurationUs = -1;
+    private volatile long mPositionUs;
+
+    private float[] mSamples = new float[0];
+
+    public PcmDecoder(Context context, Uri uri) {
+        if (uri == null) {
+            throw new IllegalArgumentException("Uri cannot be null");
+        }
+        mContext = context;
+        mUri = uri;
+    }
+
+    /***
+     * Stops a running {@link #decode(AudioProcessor)} at the next buffer boundary.
+     ****/
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /***
+     * Duration of the track being decoded, -1 before {@link #decode(AudioProcessor)} opened it or
+     * if the container does not tell.
+     ****/
+    public long getDurationUs() {
+        return mDurationUs;
+    }
+
+    /***
+     * Presentation time of the last buffer fed to the codec.
+     ****/
+    public long getPositionUs() {
+        return mPositionUs;
+    }
+
+    /***
+     * Decodes the whole stream into {@code sink}. The sink is prepared with the sample rate of the
+     * track before the first block.
+     *
+     * @return the sample rate of the decoded audio
+     ****/
+    public int decode(AudioProcessor sink) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(mContext, mUri, null);
+            MediaFormat format = selectAudioTrack(extractor);
+            if (format == null) {
+                throw new IOException("No audio track in " + mUri);
+            }
+
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            if (format.containsKey(MediaFormat.KEY_DURATION)) {
+                mDurationUs = format.getLong(MediaFormat.KEY_DURATION);
+            }
+            mPositionUs = 0;
+            sink.prepare(sampleRate);
+
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            ByteBuffer[] inputBuffers = codec.getInputBuffers();
+            ByteBuffer[] outputBuffers = codec.getOutputBuffers();
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            boolean inputDone = false;
+
+            while (!mCancelled) {
+                if (!inputDone) {
+                    int inIndex = codec.dequeueInputBuffer(TIMEOUT_US);
+                    if (inIndex >= 0) {
+                        int size = extractor.readSampleData(inputBuffers[inIndex], 0);
+                        if (size < 0) {
+                            codec.queueInputBuffer(inIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            mPositionUs = extractor.getSampleTime();
+                            codec.queueInputBuffer(inIndex, 0, size, mPositionUs, 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+
+                int outIndex = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+                if (outIndex == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                    outputBuffers = codec.getOutputBuffers();
+                } else if (outIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat outputFormat = codec.getOutputFormat();
+                    channels = outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                    int outputRate = outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                    if (outputRate != sampleRate) {
+                        sampleRate = outputRate;
+                        sink.prepare(sampleRate);
+                    }
+                } else if (outIndex >= 0) {
+                    ByteBuffer buffer = outputBuffers[outIndex];
+                    buffer.position(info.offset);
+                    buffer.limit(info.offset + info.size);
+                    deliver(buffer.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer(), channels, sink);
+                    codec.releaseOutputBuffer(outIndex, false);
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        break;
+                    }
+                }
+            }
+            return sampleRate;
+        } finally {
+            if (codec != null) {
+                codec.stop();
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    private void deliver(ShortBuffer pcm, int channels, AudioProcessor sink) {
+        int frames = pcm.remaining() / channels;
+        if (frames == 0) {
+            return;
+        }
+        if (mSamples.length < frames) {
+            mSamples = new float[frames];
+        }
+        float scale = 1f / (32768f * channels);
+        for (int i = 0; i < frames; i++) {
+            int sum = 0;
+            for (int c = 0; c < channels; c++) {
+                sum += pcm.get();
+            }
+            mSamples[i] = sum * scale;
+        }
+        sink.process(mSamples, 0, frames);
+    }
+
+    private static MediaFormat selectAudioTrack(MediaExtractor extractor) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            MediaFormat format = extractor.getTrackFormat(i);
+            String mime = format.getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("audio/")) {
+                extractor.selectTrack(i);
+                return format;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,191 @@
+package call.master.audiohusbandwife;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Captures raw microphone PCM with {@link AudioRecord}, runs it through an {@link AudioProcessor}
+ * and writes a 16 bit mono WAV file. Used by {@link AudioHusband} instead of {@link MediaRecorder}
+ * whenever a processor is set, since the encoder gives no access to the samples.
+ * <p>
+ * The WAV data goes to the file it is given whatever its extension; players detect the container
+ * from the RIFF header. Unlike {@link MediaRecorder}, pausing works on every API level.
+ */
+class PcmRecorder {
+
+    private static final String TAG = PcmRecorder.class.getSimpleName();
+
+    static final int SAMPLE_RATE = 16000;
+    private static final int BLOCK_SIZE = 1024;
+
+    private final File mFile;
+    private final AudioProcessor mProcessor;
+
+    private final Object mLock = new Object();
+    private AudioRecord mAudioRecord;
+    private RandomAccessFile mOutput;
+    private Thread mThread;
+    private volatile boolean mRunning;
+    private boolean mPaused;
+    private long mDataLength;
+
+    PcmRecorder(File file, AudioProcessor processor) {
+        mFile = file;
+        mProcessor = processor;
+    }
+
+    void start() throws IOException {
+        int minBufferSize = AudioRecord.getMinBufferSize(SAMPLE_RATE,
+                AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT);
+        mAudioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, SAMPLE_RATE,
+                AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT,
+                Math.max(minBufferSize, BLOCK_SIZE * 2 * 2));
+        if (mAudioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+            mAudioRecord.release();
+            mAudioRecord = null;
+            throw new IOException("AudioRecord could not be initialized");
+        }
+
+        mOutput = new RandomAccessFile(mFile, "rw");
+        mOutput.setLength(0);
+        mDataLength = 0;
+        WavFile.writeHeader(mOutput, SAMPLE_RATE, 1, 0);
+
+        mProcessor.prepare(SAMPLE_RATE);
+
+        mRunning = true;
+        mPaused = false;
+        mAudioRecord.startRecording();
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                captureLoop();
+            }
+        }, TAG);
+        mThread.start();
+    }
+
+    void pause() {
+        synchronized (mLock) {
+            mPaused = true;
+        }
+    }
+
+    void resume() {
+        synchronized (mLock) {
+            mPaused = false;
+            mLock.notifyAll();
+        }
+    }
+
+    void stop() {
+        mRunning = false;
+        resume();
+        if (mThread != null) {
+            try {
+                mThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mThread = null;
+        }
+        if (mAudioRecord != null) {
+            mAudioRecord.release();
+            mAudioRecord = null;
+        }
+        if (mOutput != null) {
+            try {
+                WavFile.writeHeader(mOutput, SAMPLE_RATE, 1, mDataLength);
+                mOutput.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            mOutput = null;
+        }
+    }
+
+    private void captureLoop() {
+        short[] pcm = new short[BLOCK_SIZE];
+        float[] samples = new float[BLOCK_SIZE];
+        byte[] bytes = new byte[BLOCK_SIZE * 2];
+
+        try {
+            while (mRunning) {
+                if (waitWhilePaused()) {
+                    continue;
+                }
+
+                int read = mAudioRecord.read(pcm, 0, BLOCK_SIZE);
+                if (read <= 0) {
+                    continue;
+                }
+                for (int i = 0; i < read; i++) {
+                    samples[i] = pcm[i] / 32768f;
+                }
+                mProcessor.process(samples, 0, read);
+                write(samples, read, bytes);
+            }
+            flushTail(samples, bytes);
+        } catch (IOException e) {
+            Log.e(TAG, "writing " + mFile + " failed", e);
+        } finally {
+            if (mAudioRecord.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
+                mAudioRecord.stop();
+            }
+        }
+    }
+
+    private void write(float[] samples, int length, byte[] bytes) throws IOException {
+        WavFile.floatToPcm16(samples, 0, length, bytes);
+        mOutput.write(bytes, 0, length * 2);
+        mDataLength += length * 2;
+    }
+
+    /***
+     * Feeds the processor as much silence as it delays its output by, so the last words held back
+     * in its buffers reach the file before the header is finalized.
+     ****/
+    private void flushTail(float[] samples, byte[] bytes) throws IOException {
+        int remaining = AudioProcessorChain.latencyOf(mProcessor);
+        while (remaining > 0) {
+            int length = Math.min(remaining, BLOCK_SIZE);
+            Arrays.fill(samples, 0, length, 0f);
+            mProcessor.process(samples, 0, length);
+            write(samples, length, bytes);
+            remaining -= length;
+        }
+    }
+
+    /***
+     * Blocks while paused, stopping the microphone for the duration.
+     *
+     * @return true if the capture was paused and the loop condition has to be checked again
+     ****/
+    private boolean waitWhilePaused() {
+        synchronized (mLock) {
+            if (!mPaused) {
+                return false;
+            }
+            mAudioRecord.stop();
+            while (mPaused && mRunning) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    mRunning = false;
+                }
+            }
+            if (mRunning) {
+                mAudioRecord.startRecording();
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package call.master.audiohusbandwife;
+
+/**
+ * Media time of the audio being played, between the updates of the player. Each update anchors a
+ * media time to a monotonic system time; reads extrapolate from the last anchor at the playback
+ * rate, so they are precise to the microsecond instead of the tens of milliseconds
+ * {@link android.media.MediaPlayer#getCurrentPosition()} jitters by.
+ * <p>
+ * Exact anchors, e.g. from {@link android.media.MediaPlayer#getTimestamp()} or
+ * {@link android.media.AudioTrack#getTimestamp(android.media.AudioTimestamp)}, are taken as they
+ * are. Plain positions sampled by the caller only pull the clock part of the way, which filters
+ * out their jitter. Small corrections never make a running clock go backwards; differences above
+ * {@link #JUMP_THRESHOLD_US} are treated as seeks and applied right away.
+ */
+public class PlaybackClock {
+
+    /***
+     * Source of monotonic time, {@link System#nanoTime()} outside of tests. Must be the clock the
+     * anchors are expressed in.
+     ****/
+    public interface TimeSource {
+        public long nanoTime();
+    }
+
+    public static final TimeSource SYSTEM = new TimeSource() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    public static final long JUMP_THRESHOLD_US = 200000;
+    // fraction of the error of a sampled position that is corrected at once
+    private static final double POSITION_SMOOTHING = 0.1;
+
+    private final TimeSource mTimeSource;
+
+    private boolean mAnchored;
+    private long mAnchorTimeUs;
+    private long mAnchorNanos;
+    private float mRate;
+    private long mLastTimeUs = Long.MIN_VALUE;
+
+    public PlaybackClock() {
+        this(SYSTEM);
+    }
+
+    public PlaybackClock(TimeSource timeSource) {
+        mTimeSource = timeSource;
+    }
+
+    /***
+     * Exact anchor reported by the player.
+     *
+     * @param mediaTimeUs
+     *            media time that was played at {@code systemNanos}
+     * @param rate
+     *            playback speed, 0 while paused
+     ****/
+    public void onTimestamp(long mediaTimeUs, long systemNanos, float rate) {
+        setAnchor(mediaTimeUs, systemNanos, rate);
+    }
+
+    /***
+     * Position sampled just now, e.g. from {@link android.media.MediaPlayer#getCurrentPosition()}.
+     * Moves the clock by a fraction of its error unless the rate changed or the position jumped.
+     ****/
+    public void onPosition(long mediaTimeUs, float rate) {
+        long now = mTimeSource.nanoTime();
+        if (!mAnchored || rate != mRate) {
+            setAnchor(mediaTimeUs, now, rate);
+            return;
+        }
+        long predicted = extrapolate(now);
+        long error = mediaTimeUs - predicted;
+        if (Math.abs(error) >= JUMP_THRESHOLD_US) {
+            setAnchor(mediaTimeUs, now, rate);
+        } else {
+            setAnchor(predicted + (long) (error * POSITION_SMOOTHING), now, rate);
+        }
+    }
+
+    /***
+     * Changes the speed from now on, 0 to pause, without moving the clock.
+     ****/
+    public void setRate(float rate) {
+        if (!mAnchored) {
+            mRate = rate;
+            return;
+        }
+        long now = mTimeSource.nanoTime();
+        setAnchor(timeAt(now), now, rate);
+    }
+
+    public float getRate() {
+        return mRate;
+    }
+
+    /***
+     * Moves the clock to {@code mediaTimeUs}, backwards too.
+     ****/
+    public void seekTo(long mediaTimeUs) {
+        setAnchor(mediaTimeUs, mTimeSource.nanoTime(), mRate);
+        mLastTimeUs = Long.MIN_VALUE;
+    }
+
+    public boolean isAnchored() {
+        return mAnchored;
+    }
+
+    /***
+     * Current media time in microseconds, 0 before the first anchor.
+     ****/
+    public long getTimeUs() {
+        return mAnchored ? timeAt(mTimeSource.nanoTime()) : 0;
+    }
+
+    private long timeAt(long nanos) {
+        long time = extrapolate(nanos);
+        if (mRate > 0 && time < mLastTimeUs && mLastTimeUs - time < JUMP_THRESHOLD_US) {
+            // a late anchor, hold still until playback catches up
+            return mLastTimeUs;
+        }
+        mLastTimeUs = time;
+        return time;
+    }
+
+    /***
+     * Forgets the anchors, e.g. when a new source is loaded.
+     ****/
+    public void reset() {
+        mAnchored = false;
+        mRate = 0;
+        mLastTimeUs = Long.MIN_VALUE;
+    }
+
+    private void setAnchor(long mediaTimeUs, long systemNanos, float rate) {
+        mAnchorTimeUs = mediaTimeUs;
+        mAnchorNanos = systemNanos;
+        mRate = rate;
+        mAnchored = true;
+    }
+
+    private long extrapolate(long nanos) {
+        return mAnchorTimeUs + (long) ((nanos - mAnchorNanos) / 1000.0 * mRate);
+    }
+}
@@ -0,0 +1,29 @@
+package call.master.audiohusbandwife;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Opens a remote resource at an arbitrary byte offset.
+ */
+public interface RangeFetcher {
+
+    public static class Response {
+        /***
+         * Stream positioned at the requested offset.
+         ****/
+        public final InputStream stream;
+
+        /***
+         * Total length of the resource, or -1 if the server did not say.
+         ****/
+        public final long totalLength;
+
+        public Response(InputStream stream, long totalLength) {
+            this.stream = stream;
+            this.totalLength = totalLength;
+        }
+    }
+
+    public Response open(long position) throws IOException;
+}
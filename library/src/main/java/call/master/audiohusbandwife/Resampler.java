@@ -0,0 +1,170 @@
+package call.master.audiohusbandwife;
+
+/**
+ * Streaming sample rate converter for mono float PCM using a Blackman windowed sinc. The kernel is
+ * tabulated once per rate pair and linearly interpolated, so arbitrary (non integer) ratios cost the
+ * same as simple ones. When downsampling the cutoff follows the output Nyquist to prevent aliasing.
+ * <p>
+ * Feed input with {@link #process}; the converter holds back half a kernel of look-ahead,
+ * which {@link #flush} releases at the end of the stream.
+ */
+public class Resampler {
+
+    private static final int DEFAULT_ZERO_CROSSINGS = 16;
+    private static final int TABLE_RESOLUTION = 256;
+    private static final float CUTOFF_MARGIN = 0.95f;
+
+    private final int mInputRate;
+    private final int mOutputRate;
+    private final double mStep;
+    private final float mCutoff;
+    private final float[] mKernel;
+    private final int mHalfWidth;
+
+    private float[] mBuffer;
+    private int mBuffered;
+    // position of the next output sample, in input samples relative to mBuffer[0]
+    private double mTime;
+
+    public Resampler(int inputRate, int outputRate) {
+        this(inputRate, outputRate, DEFAULT_ZERO_CROSSINGS);
+    }
+
+    public Resampler(int inputRate, int outputRate, int zeroCrossings) {
+        if (inputRate <= 0 || outputRate <= 0) {
+            throw new IllegalArgumentException("Sample rates must be positive");
+        }
+        mInputRate = inputRate;
+        mOutputRate = outputRate;
+        mStep = (double) inputRate / outputRate;
+        mCutoff = outputRate < inputRate ? CUTOFF_MARGIN * outputRate / inputRate : CUTOFF_MARGIN;
+        // kernel width in input samples grows as the cutoff drops
+        mHalfWidth = (int) Math.ceil(zeroCrossings / mCutoff);
+
+        int size = mHalfWidth * TABLE_RESOLUTION + 2;
+        mKernel = new float[size];
+        for (int i = 0; i < size; i++) {
+            double x = (double) i / TABLE_RESOLUTION;
+            mKernel[i] = (float) (mCutoff * sinc(mCutoff * x) * blackman(x / mHalfWidth));
+        }
+
+        mBuffer = new float[4096 + 2 * mHalfWidth];
+        reset();
+    }
+
+    public int getInputRate() {
+        return mInputRate;
+    }
+
+    public int getOutputRate() {
+        return mOutputRate;
+    }
+
+    /***
+     * Upper bound of the samples {@link #process} can return for {@code inputLength} input samples.
+     ****/
+    public int getMaxOutputLength(int inputLength) {
+        return (int) Math.ceil((mBuffered + inputLength) / mStep) + 2;
+    }
+
+    /***
+     * Converts {@code length} input samples, writing the ready output to {@code output}.
+     *
+     * @return number of output samples written
+     ****/
+    public int process(float[] input, int offset, int length, float[] output, int outputOffset) {
+        ensureCapacity(mBuffered + length);
+        System.arraycopy(input, offset, mBuffer, mBuffered, length);
+        mBuffered += length;
+        return drain(output, outputOffset, mBuffered - mHalfWidth);
+    }
+
+    /***
+     * Pads the stream end with silence and returns the remaining output.
+     ****/
+    public int flush(float[] output, int outputOffset) {
+        ensureCapacity(mBuffered + mHalfWidth);
+        for (int i = 0; i < mHalfWidth; i++) {
+            mBuffer[mBuffered + i] = 0f;
+        }
+        int end = mBuffered;
+        mBuffered += mHalfWidth;
+        int written = drain(output, outputOffset, end);
+        reset();
+        return written;
+    }
+
+    /***
+     * Produces every output sample whose position is below {@code limit}, then drops the input that
+     * is no longer needed.
+     ****/
+    private int drain(float[] output, int outputOffset, int limit) {
+        int written = 0;
+        while (mTime < limit) {
+            int center = (int) mTime;
+            float fraction = (float) (mTime - center);
+            double sum = 0;
+            int from = center - mHalfWidth + 1;
+            int to = center + mHalfWidth;
+            for (int i = from; i <= to; i++) {
+                sum += mBuffer[i] * kernel(i - center - fraction);
+            }
+            output[outputOffset + written++] = (float) sum;
+            mTime += mStep;
+        }
+
+        int consumed = (int) mTime - mHalfWidth;
+        if (consumed > 0) {
+            System.arraycopy(mBuffer, consumed, mBuffer, 0, mBuffered - consumed);
+            mBuffered -= consumed;
+            mTime -= consumed;
+        }
+        return written;
+    }
+
+    private float kernel(float x) {
+        float position = Math.abs(x) * TABLE_RESOLUTION;
+        int index = (int) position;
+        if (index >= mKernel.length - 1) {
+            return 0f;
+        }
+        float fraction = position - index;
+        return mKernel[index] + fraction * (mKernel[index + 1] - mKernel[index]);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mBuffer.length) {
+            float[] buffer = new float[Math.max(capacity, mBuffer.length * 2)];
+            System.arraycopy(mBuffer, 0, buffer, 0, mBuffered);
+            mBuffer = buffer;
+        }
+    }
+
+    public void reset() {
+        // start with half a kernel of silence so the first output sample is input sample 0
+        for (int i = 0; i < mHalfWidth; i++) {
+            mBuffer[i] = 0f;
+        }
+        mBuffered = mHalfWidth;
+        mTime = mHalfWidth;
+    }
+
+    private static double sinc(double x) {
+        if (x == 0) {
+            return 1;
+        }
+        double px = Math.PI * x;
+        return Math.sin(px) / px;
+    }
+
+    /***
+     * Blackman window over [-1, 1], zero outside.
+     ****/
+    private static double blackman(double x) {
+        if (Math.abs(x) >= 1) {
+            return 0;
+        }
+        double phase = Math.PI * (x + 1);
+        return 0.42 - 0.5 * Math.cos(phase) + 0.08 * Math.cos(2 * phase);
+    }
+}
@@ -0,0 +1,137 @@
+package call.master.audiohusbandwife;
+
+import java.util.Arrays;
+
+/**
+ * Streaming short-time Fourier transform. Feed it PCM in blocks of any length; every
+ * {@code hopSize} samples (once the first {@code fftSize} samples are in) a magnitude spectrum is
+ * delivered to the {@link OnSpectrumListener}.
+ * <p>
+ * As an {@link AudioProcessor} it leaves the samples untouched, so it can sit in the
+ * {@link AudioHusband} capture chain or be the sink of a {@link PcmDecoder} over an
+ * {@link AudioWife} source.
+ */
+public class Spectrogram implements AudioProcessor {
+
+    public interface OnSpectrumListener {
+        /***
+         * @param magnitudes
+         *            amplitude per bin, scaled so that a full scale sine reads 1.0. The array is
+         *            reused for the next frame, copy it to keep it.
+         * @param bins
+         *            number of valid entries, fftSize / 2 + 1
+         * @param binHz
+         *            frequency spacing of the bins
+         * @param timeMillis
+         *            media time of the first sample of the frame
+         ****/
+        public void onSpectrum(float[] magnitudes, int bins, float binHz, long timeMillis);
+    }
+
+    private final Fft mFft;
+    private final int mFftSize;
+    private final int mHopSize;
+    private final float[] mWindow;
+    private final float mScale;
+
+    private final float[] mHistory;
+    private final float[] mRe;
+    private final float[] mIm;
+    private final float[] mMagnitudes;
+
+    private OnSpectrumListener mListener;
+    private int mSampleRate;
+    private int mWriteIndex;
+    private int mSinceFrame;
+    private long mSamplesSeen;
+
+    public Spectrogram(int fftSize, int hopSize, FftWindow window) {
+        if (hopSize <= 0) {
+            throw new IllegalArgumentException("Hop size must be positive");
+        }
+        mFft = new Fft(fftSize);
+        mFftSize = fftSize;
+        mHopSize = hopSize;
+        mWindow = window.coefficients(fftSize);
+
+        float sum = 0;
+        for (float w : mWindow) {
+            sum += w;
+        }
+        mScale = 2f / sum;
+
+        mHistory = new float[fftSize];
+        mRe = new float[fftSize];
+        mIm = new float[fftSize];
+        mMagnitudes = new float[fftSize / 2 + 1];
+    }
+
+    public Spectrogram setOnSpectrumListener(OnSpectrumListener listener) {
+        this.mListener = listener;
+        return this;
+    }
+
+    public int getFftSize() {
+        return mFftSize;
+    }
+
+    public int getHopSize() {
+        return mHopSize;
+    }
+
+    @Override
+    public void prepare(int sampleRate) {
+        mSampleRate = sampleRate;
+        reset();
+    }
+
+    @Override
+    public void process(float[] buffer, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            mHistory[mWriteIndex] = buffer[i];
+            if (++mWriteIndex == mFftSize) {
+                mWriteIndex = 0;
+            }
+            mSamplesSeen++;
+            if (++mSinceFrame >= mHopSize && mSamplesSeen >= mFftSize) {
+                mSinceFrame = 0;
+                computeFrame();
+            }
+        }
+    }
+
+    private void computeFrame() {
+        // the oldest sample sits at the write index
+        int tail = mFftSize - mWriteIndex;
+        for (int i = 0; i < tail; i++) {
+            mRe[i] = mHistory[mWriteIndex + i] * mWindow[i];
+        }
+        for (int i = tail; i < mFftSize; i++) {
+            mRe[i] = mHistory[i - tail] * mWindow[i];
+        }
+        Arrays.fill(mIm, 0f);
+        mFft.forward(mRe, mIm);
+
+        int bins = mMagnitudes.length;
+        for (int k = 0; k < bins; k++) {
+            mMagnitudes[k] = (float) Math.sqrt(mRe[k] * mRe[k] + mIm[k] * mIm[k]) * mScale;
+        }
+        // DC and Nyquist have no mirrored half
+        mMagnitudes[0] *= 0.5f;
+        mMagnitudes[bins - 1] *= 0.5f;
+
+        if (mListener != null) {
+            long startSample = mSamplesSeen - mFftSize;
+            mListener.onSpectrum(mMagnitudes, bins, (float) mSampleRate / mFftSize,
+                    startSample * 1000 / mSampleRate);
+        }
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(mHistory, 0f);
+        mWriteIndex = 0;
+        mSinceFrame = 0;
+        mSamplesSeen = 0;
+    }
+}
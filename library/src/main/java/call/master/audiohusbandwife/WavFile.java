@@ -0,0 +1,78 @@
+package call.master.audiohusbandwife;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Minimal canonical WAV (RIFF, 16 bit PCM) support.
+ */
+public class WavFile {
+
+    public static final int HEADER_SIZE = 44;
+
+    private WavFile() {
+    }
+
+    /***
+     * Writes a 44 byte header at the start of {@code file}, leaving the file pointer where it was.
+     * Call it once before the samples with a zero length and again once the length is known.
+     ****/
+    public static void writeHeader(RandomAccessFile file, int sampleRate, int channels, long dataLength) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        int byteRate = sampleRate * channels * 2;
+
+        putAscii(header, 0, "RIFF");
+        putInt(header, 4, (int) (dataLength + HEADER_SIZE - 8));
+        putAscii(header, 8, "WAVE");
+        putAscii(header, 12, "fmt ");
+        putInt(header, 16, 16);
+        putShort(header, 20, 1);
+        putShort(header, 22, channels);
+        putInt(header, 24, sampleRate);
+        putInt(header, 28, byteRate);
+        putShort(header, 32, channels * 2);
+        putShort(header, 34, 16);
+        putAscii(header, 36, "data");
+        putInt(header, 40, (int) dataLength);
+
+        long position = file.getFilePointer();
+        file.seek(0);
+        file.write(header);
+        file.seek(Math.max(position, HEADER_SIZE));
+    }
+
+    /***
+     * Converts float samples to little endian 16 bit PCM, clipping to [-1, 1].
+     ****/
+    public static void floatToPcm16(float[] samples, int offset, int length, byte[] out) {
+        for (int i = 0; i < length; i++) {
+            float sample = samples[offset + i];
+            if (sample > 1f) {
+                sample = 1f;
+            } else if (sample < -1f) {
+                sample = -1f;
+            }
+            int value = (int) (sample * 32767f);
+            out[2 * i] = (byte) value;
+            out[2 * i + 1] = (byte) (value >> 8);
+        }
+    }
+
+    private static void putAscii(byte[] buffer, int offset, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            buffer[offset + i] = (byte) value.charAt(i);
+        }
+    }
+
+    private static void putShort(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+        buffer[offset + 2] = (byte) (value >> 16);
+        buffer[offset + 3] = (byte) (value >> 24);
+    }
+}
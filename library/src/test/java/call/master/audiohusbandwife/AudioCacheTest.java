@@ -0,0 +1,323 @@
+package call.master.audiohusbandwife;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link AudioCache} and {@link CachingDataSource} against an in-process HTTP server.
+ */
+public class AudioCacheTest {
+
+    private static final int CONTENT_LENGTH = 1024 * 1024 + 123;
+
+    private final byte[] mContent = new byte[CONTENT_LENGTH];
+    private final AtomicInteger mRequests = new AtomicInteger();
+    private final List<Integer> mRangeStarts = Collections.synchronizedList(new ArrayList<Integer>());
+    private volatile boolean mHonorRanges = true;
+    // when set, a response from the start sends one 8 KB chunk per permit
+    private volatile Semaphore mChunkPermits;
+
+    private ExecutorService mExecutor;
+
+    private HttpServer mServer;
+    private String mUrl;
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        new Random(5).nextBytes(mContent);
+
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        // a stalled response must not hold up the next request
+        mExecutor = Executors.newCachedThreadPool();
+        mServer.setExecutor(mExecutor);
+        mServer.createContext("/audio.amr", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mRequests.incrementAndGet();
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                int start = 0;
+                if (range != null && mHonorRanges) {
+                    start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+                    mRangeStarts.add(start);
+                    exchange.getResponseHeaders().add("Content-Range",
+                            "bytes " + start + "-" + (CONTENT_LENGTH - 1) + "/" + CONTENT_LENGTH);
+                    exchange.sendResponseHeaders(206, CONTENT_LENGTH - start);
+                } else {
+                    exchange.sendResponseHeaders(200, CONTENT_LENGTH);
+                }
+                Semaphore permits = start == 0 ? mChunkPermits : null;
+                OutputStream body = exchange.getResponseBody();
+                try {
+                    for (int i = start; i < CONTENT_LENGTH; i += 8192) {
+                        if (permits != null) {
+                            permits.acquire();
+                        }
+                        int length = Math.min(8192, CONTENT_LENGTH - i);
+                        body.write(mContent, i, length);
+                        body.flush();
+                    }
+                } catch (IOException e) {
+                    // client hung up after a seek
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        mServer.start();
+        mUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/audio.amr";
+
+        mDirectory = new File(System.getProperty("java.io.tmpdir"), "audiocache-" + System.nanoTime());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (mChunkPermits != null) {
+            mChunkPermits.release(CONTENT_LENGTH);
+        }
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void sequentialReadMatchesAndSecondPlayIsOffline() throws Exception {
+        AudioCache cache = new AudioCache(mDirectory, 10 * CONTENT_LENGTH);
+
+        CachingDataSource source = cache.open(mUrl);
+        assertEquals(CONTENT_LENGTH, source.getSize());
+        assertArrayEquals(mContent, readAll(source, 4096));
+        source.close();
+        cache.awaitReleased();
+
+        int requests = mRequests.get();
+        AudioCache reopened = new AudioCache(mDirectory, 10 * CONTENT_LENGTH);
+        CachingDataSource again = reopened.open(mUrl);
+        assertTrue(again.getCacheFile().isComplete());
+        assertArrayEquals(mContent, readAll(again, 50000));
+        again.close();
+        reopened.awaitReleased();
+        assertEquals(requests, mRequests.get());
+    }
+
+    @Test
+    public void seekFarAheadUsesRangeRequest() throws Exception {
+        // the sequential download stalls after 64 KB, so the seek lands well past it
+        mChunkPermits = new Semaphore(8);
+        AudioCache cache = new AudioCache(mDirectory, 10 * CONTENT_LENGTH);
+        final CachingDataSource source = cache.open(mUrl);
+
+        byte[] head = new byte[1000];
+        assertEquals(1000, readFully(source, 0, head));
+
+        final int position = CONTENT_LENGTH - 5000;
+        final byte[] tail = new byte[5000];
+        final int[] read = new int[1];
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    read[0] = readFully(source, position, tail);
+                } catch (IOException e) {
+                    read[0] = -1;
+                }
+            }
+        });
+        reader.start();
+        // the reader waits for data once it asked the downloader to seek
+        while (reader.getState() != Thread.State.TIMED_WAITING && reader.isAlive()) {
+            Thread.yield();
+        }
+        // one more chunk wakes the downloader up, which then notices the seek
+        mChunkPermits.release();
+        reader.join(10000);
+
+        assertEquals(5000, read[0]);
+        for (int i = 0; i < tail.length; i++) {
+            assertEquals(mContent[position + i], tail[i]);
+        }
+        assertEquals(-1, source.readAt(CONTENT_LENGTH, tail, 0, 10));
+        assertEquals(Integer.valueOf(position), mRangeStarts.get(0));
+        source.close();
+        cache.awaitReleased();
+    }
+
+    @Test
+    public void sameUrlSharesOneSourceUntilLastClose() throws Exception {
+        AudioCache cache = new AudioCache(mDirectory, 10 * CONTENT_LENGTH);
+        CachingDataSource first = cache.open(mUrl);
+        CachingDataSource second = cache.open(mUrl);
+        assertSame(first, second);
+
+        assertArrayEquals(mContent, readAll(first, 65536));
+        first.close();
+        File index = CacheFile.indexFileOf(first.getCacheFile().getFile());
+        assertFalse(index.exists());
+
+        // still open through the second reference
+        byte[] head = new byte[100];
+        assertEquals(100, readFully(second, 0, head));
+        second.close();
+        cache.awaitReleased();
+        assertTrue(index.exists());
+
+        int requests = mRequests.get();
+        CachingDataSource again = cache.open(mUrl);
+        assertNotSame(first, again);
+        assertTrue(again.getCacheFile().isComplete());
+        again.close();
+        cache.awaitReleased();
+        assertEquals(requests, mRequests.get());
+    }
+
+    @Test
+    public void closeDoesNotWaitForStalledDownload() throws Exception {
+        // the server sends one chunk and then stalls, far below the 15 s read timeout
+        mChunkPermits = new Semaphore(1);
+        AudioCache cache = new AudioCache(mDirectory, 10 * CONTENT_LENGTH);
+        CachingDataSource source = cache.open(mUrl);
+        byte[] head = new byte[100];
+        assertEquals(100, readFully(source, 0, head));
+
+        source.close();
+        // dropping the connection fails the blocked read, so the release completes while the
+        // server is still stalled
+        cache.awaitReleased();
+        assertTrue(CacheFile.indexFileOf(source.getCacheFile().getFile()).exists());
+
+        CachingDataSource again = cache.open(mUrl);
+        assertNotSame(source, again);
+        assertTrue(again.getCacheFile().cachedLengthAt(0) >= 100);
+        again.close();
+        cache.awaitReleased();
+    }
+
+    @Test
+    public void serverIgnoringRangesStillWorks() throws Exception {
+        mHonorRanges = false;
+        AudioCache cache = new AudioCache(mDirectory, 10 * CONTENT_LENGTH);
+        CachingDataSource source = cache.open(mUrl);
+
+        int position = CONTENT_LENGTH / 2;
+        byte[] middle = new byte[3000];
+        assertEquals(3000, readFully(source, position, middle));
+        for (int i = 0; i < middle.length; i++) {
+            assertEquals(mContent[position + i], middle[i]);
+        }
+        assertArrayEquals(mContent, readAll(source, 65536));
+        source.close();
+        cache.awaitReleased();
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedOverBudget() throws Exception {
+        AudioCache cache = new AudioCache(mDirectory, CONTENT_LENGTH * 2 + 10);
+
+        String first = mUrl + "?1";
+        String second = mUrl + "?2";
+        String third = mUrl + "?3";
+        for (String url : new String[]{first, second}) {
+            CachingDataSource source = cache.open(url, new HttpRangeFetcher(url));
+            readAll(source, 65536);
+            source.close();
+        }
+
+        // touch the first one so the second becomes the eviction candidate
+        cache.open(first, new HttpRangeFetcher(first)).close();
+        cache.awaitReleased();
+
+        CachingDataSource open = cache.open(third, new HttpRangeFetcher(third));
+        readAll(open, 65536);
+        cache.trim();
+        // the open third file is never evicted, even though it tips the cache over budget
+        assertTrue(new File(mDirectory, AudioCache.fileNameFor(third)).exists());
+        open.close();
+        cache.awaitReleased();
+
+        assertTrue(new File(mDirectory, AudioCache.fileNameFor(first)).exists());
+        assertFalse(new File(mDirectory, AudioCache.fileNameFor(second)).exists());
+        assertTrue(cache.size() <= cache.getMaxBytes());
+    }
+
+    @Test
+    public void cacheFileMergesSpans() throws Exception {
+        mDirectory.mkdirs();
+        CacheFile file = new CacheFile(new File(mDirectory, "spans"));
+        byte[] data = new byte[100];
+
+        file.write(0, data, 0, 100);
+        file.write(200, data, 0, 100);
+        assertEquals(100, file.cachedLengthAt(0));
+        assertEquals(0, file.cachedLengthAt(150));
+        assertEquals(100, file.firstGapFrom(0));
+        assertEquals(200, file.nextSpanAfter(100));
+
+        file.write(100, data, 0, 100);
+        assertEquals(300, file.cachedLengthAt(0));
+        assertEquals(-1, file.nextSpanAfter(0));
+        assertEquals(300, file.getCachedBytes());
+
+        file.setLength(300);
+        assertTrue(file.isComplete());
+        assertEquals(-1, file.firstGapFrom(0));
+        file.close();
+    }
+
+    @Test
+    public void parsesContentRangeTotal() throws Exception {
+        assertEquals(1000, HttpRangeFetcher.parseTotalLength("bytes 100-999/1000"));
+        assertEquals(-1, HttpRangeFetcher.parseTotalLength("bytes 100-999/*"));
+        assertEquals(-1, HttpRangeFetcher.parseTotalLength(null));
+    }
+
+    private static byte[] readAll(CachingDataSource source, int chunk) throws IOException {
+        byte[] out = new byte[(int) source.getSize()];
+        int total = 0;
+        while (total < out.length) {
+            int read = source.readAt(total, out, total, Math.min(chunk, out.length - total));
+            assertTrue(read > 0);
+            total += read;
+        }
+        return out;
+    }
+
+    private static int readFully(CachingDataSource source, long position, byte[] out) throws IOException {
+        int total = 0;
+        while (total < out.length) {
+            int read = source.readAt(position + total, out, total, out.length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+}
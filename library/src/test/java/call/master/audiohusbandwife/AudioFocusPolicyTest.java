@@ -0,0 +1,159 @@
+package call.master.audiohusbandwife;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Focus-event transitions of {@link AudioFocusPolicy}.
+ */
+public class AudioFocusPolicyTest {
+
+    private final ArrayList<String> mCalls = new ArrayList<String>();
+    private AudioFocusPolicy mPolicy;
+
+    @Before
+    public void setUp() throws Exception {
+        mPolicy = new AudioFocusPolicy(new AudioFocusPolicy.Player() {
+            @Override
+            public void pausePlayback() {
+                mCalls.add("pause");
+            }
+
+            @Override
+            public void resumePlayback() {
+                mCalls.add("resume");
+            }
+
+            @Override
+            public void setVolume(float volume) {
+                mCalls.add("volume " + volume);
+            }
+        });
+    }
+
+    @Test
+    public void transientLossPausesAndGainResumes() throws Exception {
+        mPolicy.onPlay();
+
+        assertFalse(mPolicy.onFocusChange(AudioFocusPolicy.FocusChange.LOSS_TRANSIENT));
+        assertEquals(AudioFocusPolicy.STATE.PAUSED_TRANSIENT, mPolicy.getState());
+
+        assertFalse(mPolicy.onFocusChange(AudioFocusPolicy.FocusChange.GAIN));
+        assertEquals(AudioFocusPolicy.STATE.PLAYING, mPolicy.getState());
+        // the volume was never lowered, so it is left alone
+        assertEquals(Arrays.asList("pause", "resume"), mCalls);
+    }
+
+    @Test
+    public void duckLowersAndRestoresVolume() throws Exception {
+        mPolicy.setDuckVolume(0.25f).onPlay();
+
+        mPolicy.onFocusChange(AudioFocusPolicy.FocusChange.LOSS_TRANSIENT_CAN_DUCK);
+        assertEquals(AudioFocusPolicy.STATE.DUCKED, mPolicy.getState());
+        mPolicy.onFocusChange(AudioFocusPolicy.FocusChange.GAIN);
+
+        assertEquals(AudioFocusPolicy.STATE.PLAYING, mPolicy.getState());
+        assertEquals(Arrays.asList("volume 0.25", "volume 1.0"), mCalls);
+    }
+
+    @Test
+    public void duckModePausePausesInsteadOfDucking() throws Exception {
+        mPolicy.setDuckMode(AudioFocusPolicy.DuckMode.PAUSE).onPlay();
+
+        mPolicy.onFocusChange(AudioFocusPolicy.FocusChange.LOSS_TRANSIENT_CAN_DUCK);
+        assertEquals(AudioFocusPolicy.STATE.PAUSED_TRANSIENT, mPolicy.getState());
+        mPolicy.onFocusChange(AudioFocusPolicy.FocusChange.GAIN);
+
+        assertEquals(Arrays.asList("pause", "resume"), mCalls);
+    }
+
+    @Test
+    public void transientLossWhileDuckedPauses() throws Exception {
+        mPolicy.onPlay();
+        mPolicy.onFocusChange(AudioFocusPolicy.FocusChange.LOSS_TRANSIENT_CAN_DUCK);
+        mPolicy.onFocusChange(AudioFocusPolicy.FocusChange.LOSS_TRANSIENT);
+        mPolicy.onFocusChange(AudioFocusPolicy.FocusChange.GAIN);
+
+        assertEquals(Arrays.asList("volume 0.2", "pause", "volume 1.0", "resume"), mCalls);
+    }
+
+    @Test
+    public void userPauseWhileDuckedRestoresVolume() throws Exception {
+        mPolicy.onPlay();
+        mPolicy.onFocusChange(AudioFocusPolicy.FocusChange.LOSS_TRANSIENT_CAN_DUCK);
+        mPolicy.onPause();
+        mPolicy.onFocusChange(AudioFocusPolicy.FocusChange.GAIN);
+        mPolicy.onPlay();
+
+        assertEquals(AudioFocusPolicy.STATE.PLAYING, mPolicy.getState());
+        assertEquals(Arrays.asList("volume 0.2", "volume 1.0"), mCalls);
+    }
+
+    @Test
+    public void permanentLossOrNoiseWhileDuckedRestoresVolume() throws Exception {
+        mPolicy.onPlay();
+        mPolicy.onFocusChange(AudioFocusPolicy.FocusChange.LOSS_TRANSIENT_CAN_DUCK);
+        assertTrue(mPolicy.onFocusChange(AudioFocusPolicy.FocusChange.LOSS));
+        mPolicy.onPlay();
+
+        mPolicy.onFocusChange(AudioFocusPolicy.FocusChange.LOSS_TRANSIENT_CAN_DUCK);
+        mPolicy.onBecomingNoisy();
+        mPolicy.onPlay();
+
+        assertEquals(Arrays.asList("volume 0.2", "pause", "volume 1.0",
+                "volume 0.2", "pause", "volume 1.0"), mCalls);
+    }
+
+    @Test
+    public void permanentLossPausesAndAbandons() throws Exception {
+        mPolicy.onPlay();
+
+        assertTrue(mPolicy.onFocusChange(AudioFocusPolicy.FocusChange.LOSS));
+        assertEquals(AudioFocusPolicy.STATE.PAUSED, mPolicy.getState());
+
+        mPolicy.onFocusChange(AudioFocusPolicy.FocusChange.GAIN);
+        assertEquals(Arrays.asList("pause"), mCalls);
+    }
+
+    @Test
+    public void userPauseIsNotResumedByGain() throws Exception {
+        mPolicy.onPlay();
+        mPolicy.onPause();
+
+        mPolicy.onFocusChange(AudioFocusPolicy.FocusChange.LOSS_TRANSIENT);
+        mPolicy.onFocusChange(AudioFocusPolicy.FocusChange.GAIN);
+
+        assertEquals(AudioFocusPolicy.STATE.PAUSED, mPolicy.getState());
+        assertTrue(mCalls.isEmpty());
+    }
+
+    @Test
+    public void becomingNoisyPausesAndCancelsPendingResume() throws Exception {
+        mPolicy.onPlay();
+        mPolicy.onBecomingNoisy();
+        assertEquals(AudioFocusPolicy.STATE.PAUSED, mPolicy.getState());
+
+        mPolicy.onPlay();
+        mPolicy.onFocusChange(AudioFocusPolicy.FocusChange.LOSS_TRANSIENT);
+        mPolicy.onBecomingNoisy();
+        mPolicy.onFocusChange(AudioFocusPolicy.FocusChange.GAIN);
+
+        assertEquals(AudioFocusPolicy.STATE.PAUSED, mPolicy.getState());
+        assertEquals(Arrays.asList("pause", "pause"), mCalls);
+    }
+
+    @Test
+    public void idlePlayerIgnoresFocusEvents() throws Exception {
+        mPolicy.onFocusChange(AudioFocusPolicy.FocusChange.LOSS_TRANSIENT);
+        mPolicy.onBecomingNoisy();
+        mPolicy.onFocusChange(AudioFocusPolicy.FocusChange.GAIN);
+
+        assertEquals(AudioFocusPolicy.STATE.IDLE, mPolicy.getState());
+        assertTrue(mCalls.isEmpty());
+    }
+}
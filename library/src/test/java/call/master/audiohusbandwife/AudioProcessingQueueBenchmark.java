@@ -0,0 +1,103 @@
+package call.master.audiohusbandwife;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints the throughput of an {@link AudioProcessingQueue} running resample + normalize jobs (one
+ * minute of 48 kHz audio to 16 kHz each) as the worker count grows from one to the number of
+ * cores. Not a unit test, run its main() from the IDE.
+ */
+public class AudioProcessingQueueBenchmark {
+
+    private static final int INPUT_RATE = 48000;
+    private static final int OUTPUT_RATE = 16000;
+    private static final int BLOCK = 4096;
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(1);
+        final float[] audio = new float[INPUT_RATE * 60];
+        for (int i = 0; i < audio.length; i++) {
+            audio[i] = (random.nextFloat() * 2 - 1) * 0.3f;
+        }
+        AudioProcessingQueue.Task task = new AudioProcessingQueue.Task() {
+            @Override
+            public void run(AudioProcessingQueue.Job job) throws Exception {
+                convert(audio);
+            }
+        };
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        // warm up the JIT before measuring
+        run(task, cores, cores * 2);
+
+        double single = 0;
+        for (int workers = 1; workers <= cores; workers++) {
+            int jobs = workers * 4;
+            double seconds = run(task, workers, jobs);
+            double perSecond = jobs / seconds;
+            if (workers == 1) {
+                single = perSecond;
+            }
+            System.out.println(String.format("workers %2d  %6.2f jobs/s  %6.0fx real time  speedup %.2f",
+                    workers, perSecond, perSecond * 60, perSecond / single));
+        }
+    }
+
+    private static double run(AudioProcessingQueue.Task task, int workers, int jobs) throws Exception {
+        AudioProcessingQueue queue = new AudioProcessingQueue(workers, jobs);
+        final CountDownLatch done = new CountDownLatch(jobs);
+        AudioProcessingQueue.JobListener listener = new AudioProcessingQueue.JobListener() {
+            @Override
+            public void onProgress(AudioProcessingQueue.Job job, float progress) {
+            }
+
+            @Override
+            public void onCompleted(AudioProcessingQueue.Job job) {
+                done.countDown();
+            }
+
+            @Override
+            public void onFailed(AudioProcessingQueue.Job job, Exception e) {
+                done.countDown();
+            }
+
+            @Override
+            public void onCancelled(AudioProcessingQueue.Job job) {
+                done.countDown();
+            }
+        };
+
+        long start = System.nanoTime();
+        for (int i = 0; i < jobs; i++) {
+            queue.submit(task, AudioProcessingQueue.PRIORITY_NORMAL, listener);
+        }
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        queue.shutdown();
+        queue.awaitTermination(5, TimeUnit.SECONDS);
+        return seconds;
+    }
+
+    /***
+     * Same two passes as {@link AudioTranscodeTask}, minus the codecs.
+     ****/
+    private static void convert(float[] audio) {
+        LoudnessNormalizer normalizer = new LoudnessNormalizer();
+        normalizer.prepare(INPUT_RATE);
+        normalizer.process(audio, 0, audio.length);
+        normalizer.finishAnalysis();
+
+        Resampler resampler = new Resampler(INPUT_RATE, OUTPUT_RATE);
+        float[] block = new float[BLOCK];
+        float[] output = new float[resampler.getMaxOutputLength(BLOCK) + BLOCK];
+        for (int offset = 0; offset < audio.length; offset += BLOCK) {
+            int length = Math.min(BLOCK, audio.length - offset);
+            System.arraycopy(audio, offset, block, 0, length);
+            int count = resampler.process(block, 0, length, output, 0);
+            normalizer.process(output, 0, count);
+        }
+        normalizer.process(output, 0, resampler.flush(output, 0));
+    }
+}
@@ -0,0 +1,205 @@
+package call.master.audiohusbandwife;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link AudioProcessingQueue} with a single worker so the execution order is deterministic.
+ */
+public class AudioProcessingQueueTest {
+
+    private AudioProcessingQueue mQueue;
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    private final CountDownLatch mStarted = new CountDownLatch(1);
+
+    /***
+     * Occupies the single worker until {@link #mRelease} opens.
+     ****/
+    private final AudioProcessingQueue.Task mBlocker = new AudioProcessingQueue.Task() {
+        @Override
+        public void run(AudioProcessingQueue.Job job) throws Exception {
+            mStarted.countDown();
+            mRelease.await();
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        mQueue = new AudioProcessingQueue(1, 4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mRelease.countDown();
+        mQueue.shutdown();
+        mQueue.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private static class Recorder implements AudioProcessingQueue.JobListener {
+        final List<String> mEvents = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch mDone;
+
+        Recorder(int jobs) {
+            mDone = new CountDownLatch(jobs);
+        }
+
+        @Override
+        public void onProgress(AudioProcessingQueue.Job job, float progress) {
+            mEvents.add("progress " + job.getPriority() + " " + progress);
+        }
+
+        @Override
+        public void onCompleted(AudioProcessingQueue.Job job) {
+            mEvents.add("completed " + job.getPriority());
+            mDone.countDown();
+        }
+
+        @Override
+        public void onFailed(AudioProcessingQueue.Job job, Exception e) {
+            mEvents.add("failed " + job.getPriority() + " " + e.getMessage());
+            mDone.countDown();
+        }
+
+        @Override
+        public void onCancelled(AudioProcessingQueue.Job job) {
+            mEvents.add("cancelled " + job.getPriority());
+            mDone.countDown();
+        }
+    }
+
+    private static AudioProcessingQueue.Task noop() {
+        return new AudioProcessingQueue.Task() {
+            @Override
+            public void run(AudioProcessingQueue.Job job) throws Exception {
+            }
+        };
+    }
+
+    @Test
+    public void runsHigherPriorityFirstThenInOrder() throws Exception {
+        assertTrue(mQueue.hasHeadroom());
+        mQueue.submit(mBlocker);
+        assertTrue(mStarted.await(5, TimeUnit.SECONDS));
+        assertFalse(mQueue.hasHeadroom());
+
+        Recorder recorder = new Recorder(4);
+        mQueue.submit(noop(), 1, recorder);
+        mQueue.submit(noop(), 7, recorder);
+        mQueue.submit(noop(), 3, recorder);
+        mQueue.submit(noop(), 7, recorder);
+        assertEquals(4, mQueue.getPendingCount());
+
+        mRelease.countDown();
+        assertTrue(recorder.mDone.await(5, TimeUnit.SECONDS));
+        assertEquals(4, recorder.mEvents.size());
+        assertEquals("completed 7", recorder.mEvents.get(0));
+        assertEquals("completed 7", recorder.mEvents.get(1));
+        assertEquals("completed 3", recorder.mEvents.get(2));
+        assertEquals("completed 1", recorder.mEvents.get(3));
+    }
+
+    @Test
+    public void rejectsWhenFull() throws Exception {
+        mQueue.submit(mBlocker);
+        assertTrue(mStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 4; i++) {
+            mQueue.submit(noop());
+        }
+        try {
+            mQueue.submit(noop());
+            fail();
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertEquals(4, mQueue.getPendingCount());
+    }
+
+    @Test
+    public void cancelsQueuedJob() throws Exception {
+        mQueue.submit(mBlocker);
+        assertTrue(mStarted.await(5, TimeUnit.SECONDS));
+
+        Recorder recorder = new Recorder(2);
+        AudioProcessingQueue.Job cancelled = mQueue.submit(noop(), 2, recorder);
+        AudioProcessingQueue.Job kept = mQueue.submit(noop(), 1, recorder);
+        cancelled.cancel();
+        assertEquals(AudioProcessingQueue.STATUS.CANCELLED, cancelled.getStatus());
+        assertEquals(1, mQueue.getPendingCount());
+
+        mRelease.countDown();
+        assertTrue(recorder.mDone.await(5, TimeUnit.SECONDS));
+        assertEquals(AudioProcessingQueue.STATUS.COMPLETED, kept.getStatus());
+        assertEquals("cancelled 2", recorder.mEvents.get(0));
+        assertEquals("completed 1", recorder.mEvents.get(1));
+    }
+
+    @Test
+    public void shutdownCancelsQueuedJobs() throws Exception {
+        mQueue.submit(mBlocker);
+        assertTrue(mStarted.await(5, TimeUnit.SECONDS));
+
+        Recorder recorder = new Recorder(2);
+        AudioProcessingQueue.Job first = mQueue.submit(noop(), 3, recorder);
+        AudioProcessingQueue.Job second = mQueue.submit(noop(), 4, recorder);
+        mQueue.shutdown();
+
+        assertEquals(0, recorder.mDone.getCount());
+        assertEquals(0, mQueue.getPendingCount());
+        assertEquals(AudioProcessingQueue.STATUS.CANCELLED, first.getStatus());
+        assertEquals(AudioProcessingQueue.STATUS.CANCELLED, second.getStatus());
+        assertTrue(first.isCancelled());
+        assertEquals(2, recorder.mEvents.size());
+    }
+
+    @Test
+    public void cancelsRunningJobAndReportsProgress() throws Exception {
+        final CountDownLatch running = new CountDownLatch(1);
+        Recorder recorder = new Recorder(1);
+        AudioProcessingQueue.Job job = mQueue.submit(new AudioProcessingQueue.Task() {
+            @Override
+            public void run(AudioProcessingQueue.Job job) throws Exception {
+                job.setProgress(0.25f);
+                running.countDown();
+                while (!job.isCancelled()) {
+                    Thread.sleep(1);
+                }
+                throw new CancellationException();
+            }
+        }, AudioProcessingQueue.PRIORITY_NORMAL, recorder);
+
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        assertEquals(AudioProcessingQueue.STATUS.RUNNING, job.getStatus());
+        assertEquals(0.25f, job.getProgress(), 0f);
+        job.cancel();
+        assertTrue(recorder.mDone.await(5, TimeUnit.SECONDS));
+        assertEquals(AudioProcessingQueue.STATUS.CANCELLED, job.getStatus());
+        assertEquals("progress 5 0.25", recorder.mEvents.get(0));
+        assertEquals("cancelled 5", recorder.mEvents.get(1));
+    }
+
+    @Test
+    public void reportsFailure() throws Exception {
+        Recorder recorder = new Recorder(1);
+        AudioProcessingQueue.Job job = mQueue.submit(new AudioProcessingQueue.Task() {
+            @Override
+            public void run(AudioProcessingQueue.Job job) throws Exception {
+                throw new IllegalStateException("broken input");
+            }
+        }, AudioProcessingQueue.PRIORITY_HIGH, recorder);
+
+        assertTrue(recorder.mDone.await(5, TimeUnit.SECONDS));
+        assertEquals(AudioProcessingQueue.STATUS.FAILED, job.getStatus());
+        assertEquals("failed 10 broken input", recorder.mEvents.get(0));
+    }
+}
@@ -0,0 +1,52 @@
+package call.master.audiohusbandwife;
+
+import java.util.Random;
+
+/**
+ * Prints the real-time factor (processing time / audio duration) of each capture DSP stage.
+ * Not a unit test, run its main() from the IDE.
+ */
+public class AudioProcessorBenchmark {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int BLOCK = 1024;
+    private static final int SECONDS = 60;
+
+    public static void main(String[] args) {
+        float[] input = new float[SAMPLE_RATE * SECONDS];
+        Random random = new Random(1);
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (float) (0.3 * Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE) + 0.05 * random.nextGaussian());
+        }
+
+        AudioProcessor[] stages = {
+                new HighPassFilter(),
+                new NoiseSuppressor(),
+                new AutomaticGainControl(),
+                new AudioProcessorChain()
+                        .add(new HighPassFilter())
+                        .add(new NoiseSuppressor())
+                        .add(new AutomaticGainControl())
+        };
+        float[] buffer = new float[input.length];
+        for (AudioProcessor stage : stages) {
+            stage.prepare(SAMPLE_RATE);
+            // warm up the JIT before measuring
+            for (int run = 0; run < 3; run++) {
+                run(stage, input, buffer);
+            }
+            long start = System.nanoTime();
+            run(stage, input, buffer);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("%-24s real-time factor %.5f", stage.getClass().getSimpleName(), seconds / SECONDS));
+        }
+    }
+
+    private static void run(AudioProcessor stage, float[] input, float[] buffer) {
+        System.arraycopy(input, 0, buffer, 0, input.length);
+        stage.reset();
+        for (int offset = 0; offset < buffer.length; offset += BLOCK) {
+            stage.process(buffer, offset, Math.min(BLOCK, buffer.length - offset));
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package call.master.audiohusbandwife;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the capture DSP stages on synthetic signal-plus-noise input.
+ */
+public class AudioProcessorTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int BLOCK = 160;
+
+    static float[] sine(int length, float frequency, float amplitude) {
+        float[] samples = new float[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (float) (amplitude * Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE));
+        }
+        return samples;
+    }
+
+    static double snrDb(float[] clean, float[] processed, int delay, int from) {
+        double signal = 0, error = 0;
+        for (int i = from; i + delay < processed.length; i++) {
+            double e = processed[i + delay] - clean[i];
+            signal += clean[i] * clean[i];
+            error += e * e;
+        }
+        return 10 * Math.log10(signal / error);
+    }
+
+    static void runBlockwise(AudioProcessor processor, float[] samples) {
+        for (int offset = 0; offset < samples.length; offset += BLOCK) {
+            processor.process(samples, offset, Math.min(BLOCK, samples.length - offset));
+        }
+    }
+
+    @Test
+    public void highPassRemovesHum() throws Exception {
+        float[] clean = sine(SAMPLE_RATE, 1000, 0.3f);
+        float[] hum = sine(SAMPLE_RATE, 50, 0.3f);
+        float[] noisy = new float[clean.length];
+        for (int i = 0; i < noisy.length; i++) {
+            noisy[i] = clean[i] + hum[i];
+        }
+
+        double before = snrDb(clean, noisy, 0, SAMPLE_RATE / 4);
+        HighPassFilter filter = new HighPassFilter(150f);
+        filter.prepare(SAMPLE_RATE);
+        float[] out = noisy.clone();
+        runBlockwise(filter, out);
+
+        // compare against the filtered clean tone so the passband phase shift does not count as error
+        float[] reference = clean.clone();
+        filter.prepare(SAMPLE_RATE);
+        runBlockwise(filter, reference);
+        double after = snrDb(reference, out, 0, SAMPLE_RATE / 4);
+
+        assertTrue("SNR " + before + " -> " + after, after - before > 15);
+    }
+
+    @Test
+    public void noiseSuppressorImprovesSnr() throws Exception {
+        Random random = new Random(42);
+        int leading = SAMPLE_RATE / 2;
+        int length = SAMPLE_RATE * 2;
+        float[] tone = sine(length - leading, 440, 0.3f);
+        float[] clean = new float[length];
+        System.arraycopy(tone, 0, clean, leading, tone.length);
+        float[] noisy = new float[length];
+        for (int i = 0; i < length; i++) {
+            noisy[i] = clean[i] + (float) (random.nextGaussian() * 0.05);
+        }
+
+        NoiseSuppressor suppressor = new NoiseSuppressor();
+        suppressor.prepare(SAMPLE_RATE);
+        float[] out = noisy.clone();
+        runBlockwise(suppressor, out);
+
+        assertTrue(suppressor.isNoiseProfileReady());
+        double before = snrDb(clean, noisy, 0, leading);
+        double after = snrDb(clean, out, suppressor.getLatency(), leading);
+        assertTrue("SNR " + before + " -> " + after, after - before > 6);
+    }
+
+    @Test
+    public void noiseSuppressorIsTransparentWithoutNoise() throws Exception {
+        int leading = SAMPLE_RATE / 2;
+        float[] tone = sine(SAMPLE_RATE, 440, 0.3f);
+        float[] clean = new float[leading + tone.length];
+        System.arraycopy(tone, 0, clean, leading, tone.length);
+        NoiseSuppressor suppressor = new NoiseSuppressor();
+        suppressor.prepare(SAMPLE_RATE);
+        float[] out = clean.clone();
+        runBlockwise(suppressor, out);
+
+        assertTrue(snrDb(clean, out, suppressor.getLatency(), leading) > 30);
+    }
+
+    @Test
+    public void agcConvergesToTarget() throws Exception {
+        AutomaticGainControl agc = new AutomaticGainControl(-6f, 30f, 5f, 100f);
+        agc.prepare(SAMPLE_RATE);
+
+        float[] quiet = sine(SAMPLE_RATE, 300, 0.05f);
+        runBlockwise(agc, quiet);
+        assertEquals(0.5, peak(quiet, SAMPLE_RATE / 2), 0.05);
+
+        float[] loud = sine(SAMPLE_RATE, 300, 0.9f);
+        runBlockwise(agc, loud);
+        assertEquals(0.5, peak(loud, SAMPLE_RATE / 2), 0.05);
+    }
+
+    @Test
+    public void agcCapsGainOnSilence() throws Exception {
+        AutomaticGainControl agc = new AutomaticGainControl(-6f, 12f, 5f, 100f);
+        agc.prepare(SAMPLE_RATE);
+        float[] silence = new float[SAMPLE_RATE];
+        runBlockwise(agc, silence);
+
+        assertEquals(Math.pow(10, 12 / 20.0), agc.getCurrentGain(), 1e-3);
+    }
+
+    @Test
+    public void chainSkipsDisabledStages() throws Exception {
+        AutomaticGainControl agc = new AutomaticGainControl();
+        AudioProcessorChain chain = new AudioProcessorChain()
+                .add(new HighPassFilter())
+                .add(agc);
+        chain.prepare(SAMPLE_RATE);
+        chain.setEnabled(agc, false);
+
+        float[] samples = sine(SAMPLE_RATE, 1000, 0.05f);
+        runBlockwise(chain, samples);
+
+        assertFalse(chain.isEnabled(agc));
+        assertEquals(0.05, peak(samples, SAMPLE_RATE / 2), 0.005);
+    }
+
+    @Test
+    public void chainKeepsNoiseProfileWhenToggled() throws Exception {
+        NoiseSuppressor suppressor = new NoiseSuppressor();
+        AudioProcessorChain chain = new AudioProcessorChain().add(suppressor);
+        chain.prepare(SAMPLE_RATE);
+        assertEquals(suppressor.getLatency(), chain.getLatency());
+
+        Random random = new Random(7);
+        float[] noise = new float[SAMPLE_RATE];
+        for (int i = 0; i < noise.length; i++) {
+            noise[i] = (float) (random.nextGaussian() * 0.05);
+        }
+        runBlockwise(chain, noise);
+        assertTrue(suppressor.isNoiseProfileReady());
+
+        chain.setEnabled(suppressor, false);
+        assertEquals(0, chain.getLatency());
+        chain.setEnabled(suppressor, true);
+        assertTrue(suppressor.isNoiseProfileReady());
+    }
+
+    @Test
+    public void chainResetsReenabledStageBeforeItsNextBlock() throws Exception {
+        AutomaticGainControl agc = new AutomaticGainControl(-6f, 12f, 5f, 100f);
+        AudioProcessorChain chain = new AudioProcessorChain().add(agc);
+        chain.prepare(SAMPLE_RATE);
+        runBlockwise(chain, sine(SAMPLE_RATE, 300, 0.9f));
+        float settled = agc.getCurrentGain();
+        assertTrue(settled < 1f);
+
+        chain.setEnabled(agc, false);
+        chain.setEnabled(agc, true);
+        // the caller's thread leaves the stage alone, the processing thread resets it
+        assertEquals(settled, agc.getCurrentGain(), 0f);
+        chain.process(new float[1], 0, 1);
+        assertEquals(Math.pow(10, 12 / 20.0), agc.getCurrentGain(), 1e-3);
+    }
+
+    private static float peak(float[] samples, int from) {
+        float peak = 0;
+        for (int i = from; i < samples.length; i++) {
+            peak = Math.max(peak, Math.abs(samples[i]));
+        }
+        return peak;
+    }
+}
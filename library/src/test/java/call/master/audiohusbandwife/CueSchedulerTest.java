@@ -0,0 +1,191 @@
+package call.master.audiohusbandwife;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the {@link CueScheduler} timer wheel with a small wheel, so cues wrap around it.
+ */
+public class CueSchedulerTest {
+
+    private CueScheduler mScheduler;
+    private final List<String> mFired = new ArrayList<String>();
+
+    private final CueScheduler.OnCueListener mListener = new CueScheduler.OnCueListener() {
+        @Override
+        public void onCue(CueScheduler.Cue cue, long mediaTimeUs) {
+            mFired.add((String) cue.getTag());
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        // 10 ms ticks, a 640 ms wheel, so far cues share slots with near ones
+        mScheduler = new CueScheduler(10000, 64);
+    }
+
+    @Test
+    public void firesInTimeOrderAtExactBoundaries() throws Exception {
+        mScheduler.schedule(25000, "c", mListener);
+        mScheduler.schedule(5000, "a", mListener);
+        mScheduler.schedule(20000, "b", mListener);
+        mScheduler.schedule(20000, "b2", mListener);
+
+        assertEquals(0, mScheduler.advanceTo(4999));
+        assertEquals(1, mScheduler.advanceTo(5000));
+        assertEquals(2, mScheduler.advanceTo(24999));
+        // already passed, not fired twice
+        assertEquals(0, mScheduler.advanceTo(24999));
+        assertEquals(1, mScheduler.advanceTo(100000));
+        assertEquals("[a, b, b2, c]", mFired.toString());
+    }
+
+    @Test
+    public void cuesOnLaterTurnsWaitForTheirTime() throws Exception {
+        // same slot as 30 ms, one turn later
+        mScheduler.schedule(670000, "late", mListener);
+        mScheduler.schedule(30000, "early", mListener);
+
+        mScheduler.advanceTo(40000);
+        assertEquals("[early]", mFired.toString());
+        assertEquals(670000, mScheduler.getNextCueTimeUs());
+
+        mScheduler.advanceTo(669999);
+        assertEquals("[early]", mFired.toString());
+        mScheduler.advanceTo(670000);
+        assertEquals("[early, late]", mFired.toString());
+        assertEquals(-1, mScheduler.getNextCueTimeUs());
+    }
+
+    @Test
+    public void longJumpFiresEverythingInBetween() throws Exception {
+        for (int i = 1; i <= 10; i++) {
+            mScheduler.schedule(i * 1000000L, "s" + i, mListener);
+        }
+        assertEquals(5, mScheduler.advanceTo(5500000));
+        assertEquals("[s1, s2, s3, s4, s5]", mFired.toString());
+        assertEquals(6000000, mScheduler.getNextCueTimeUs());
+    }
+
+    @Test
+    public void seeksSkipAndReplayCues() throws Exception {
+        mScheduler.schedule(100000, "x", mListener);
+        mScheduler.schedule(300000, "y", mListener);
+
+        mScheduler.seekTo(200000);
+        assertEquals(300000, mScheduler.getNextCueTimeUs());
+        mScheduler.advanceTo(400000);
+        assertEquals("[y]", mFired.toString());
+
+        // going backwards is a seek, nothing fires until playback crosses the cues again
+        assertEquals(0, mScheduler.advanceTo(0));
+        mScheduler.advanceTo(400000);
+        assertEquals("[y, x, y]", mFired.toString());
+        assertEquals(2, mScheduler.size());
+    }
+
+    @Test
+    public void cuesAtStartAndSeekTargetFire() throws Exception {
+        mScheduler.schedule(0, "start", mListener);
+        mScheduler.schedule(200000, "target", mListener);
+
+        mScheduler.seekTo(0);
+        assertEquals(0, mScheduler.getNextCueTimeUs());
+        assertEquals(1, mScheduler.advanceTo(0));
+        // fired once, staying at the same position does not repeat it
+        assertEquals(0, mScheduler.advanceTo(0));
+        assertEquals(200000, mScheduler.getNextCueTimeUs());
+
+        mScheduler.advanceTo(300000);
+        mScheduler.seekTo(200000);
+        assertEquals(200000, mScheduler.getNextCueTimeUs());
+        assertEquals(1, mScheduler.advanceTo(250000));
+
+        // a seek back onto a cue through advanceTo counts as a seek too
+        assertEquals(0, mScheduler.advanceTo(0));
+        assertEquals(1, mScheduler.advanceTo(100000));
+        assertEquals("[start, target, target, start]", mFired.toString());
+    }
+
+    @Test
+    public void replayAfterCompletionFiresFromTheStart() throws Exception {
+        mScheduler.schedule(0, "c0", mListener);
+        mScheduler.schedule(100000, "c100ms", mListener);
+        mScheduler.schedule(900000, "end", mListener);
+
+        mScheduler.seekTo(0);
+        mScheduler.advanceTo(1000000);
+        // completion rewinds, as the player starts over on the next play
+        mScheduler.seekTo(0);
+        assertEquals(0, mScheduler.getNextCueTimeUs());
+        assertEquals(2, mScheduler.advanceTo(250000));
+        assertEquals("[c0, c100ms, end, c0, c100ms]", mFired.toString());
+    }
+
+    @Test
+    public void followIgnoresSmallStepsBack() throws Exception {
+        mScheduler.schedule(100000, "a", mListener);
+        mScheduler.schedule(130000, "b", mListener);
+
+        assertEquals(1, mScheduler.followTo(110000, 200000));
+        // an exact position slightly behind the interpolated one is not a seek
+        assertEquals(0, mScheduler.followTo(95000, 200000));
+        assertEquals(110000, mScheduler.getPositionUs());
+        assertEquals(1, mScheduler.followTo(140000, 200000));
+        assertEquals("[a, b]", mFired.toString());
+
+        // a large step back still is
+        assertEquals(0, mScheduler.followTo(0, 100000));
+        assertEquals(2, mScheduler.followTo(140000, 100000));
+        assertEquals("[a, b, a, b]", mFired.toString());
+    }
+
+    @Test
+    public void cancelledCuesDoNotFire() throws Exception {
+        final CueScheduler.Cue second = mScheduler.schedule(20000, "second", mListener);
+        mScheduler.schedule(10000, "first", new CueScheduler.OnCueListener() {
+            @Override
+            public void onCue(CueScheduler.Cue cue, long mediaTimeUs) {
+                mFired.add("first");
+                // listeners may change the schedule while cues fire
+                mScheduler.cancel(second);
+                mScheduler.schedule(mediaTimeUs + 5000, "added", mListener);
+            }
+        });
+
+        assertEquals(1, mScheduler.advanceTo(30000));
+        assertTrue(second.isCancelled());
+        assertEquals(35000, mScheduler.getNextCueTimeUs());
+        mScheduler.advanceTo(40000);
+        assertEquals("[first, added]", mFired.toString());
+
+        mScheduler.clear();
+        assertEquals(0, mScheduler.size());
+        assertEquals(-1, mScheduler.getNextCueTimeUs());
+    }
+
+    @Test
+    public void drivenByPlaybackClock() throws Exception {
+        final long[] nanos = {0};
+        PlaybackClock clock = new PlaybackClock(new PlaybackClock.TimeSource() {
+            @Override
+            public long nanoTime() {
+                return nanos[0];
+            }
+        });
+        mScheduler.schedule(1234567, "cue", mListener);
+        clock.onTimestamp(1000000, 0, 1f);
+
+        // wake up exactly when the next cue is due instead of polling
+        long delayUs = mScheduler.getNextCueTimeUs() - clock.getTimeUs();
+        assertEquals(234567, delayUs);
+        nanos[0] += delayUs * 1000;
+        mScheduler.advanceTo(clock.getTimeUs());
+        assertEquals("[cue]", mFired.toString());
+    }
+}
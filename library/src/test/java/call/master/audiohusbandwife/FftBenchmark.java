@@ -0,0 +1,59 @@
+package call.master.audiohusbandwife;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Prints the time per forward {@link Fft} for each size, and the real-time factor of a 50% overlap
+ * Hann {@link Spectrogram} at 44.1 kHz. Not a unit test, run its main() from the IDE.
+ */
+public class FftBenchmark {
+
+    private static final int ITERATIONS = 20000;
+
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        for (int size = 64; size <= 8192; size <<= 1) {
+            Fft fft = new Fft(size);
+            float[] input = new float[size];
+            for (int i = 0; i < size; i++) {
+                input[i] = random.nextFloat() * 2 - 1;
+            }
+            float[] re = new float[size];
+            float[] im = new float[size];
+
+            int iterations = ITERATIONS * 64 / size + 100;
+            // warm up the JIT before measuring
+            for (int i = 0; i < iterations; i++) {
+                transform(fft, input, re, im);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                transform(fft, input, re, im);
+            }
+            double micros = (System.nanoTime() - start) / 1e3 / iterations;
+            System.out.println(String.format("FFT %5d  %9.2f us", size, micros));
+        }
+
+        int sampleRate = 44100;
+        float[] audio = new float[sampleRate * 60];
+        for (int i = 0; i < audio.length; i++) {
+            audio[i] = random.nextFloat() * 2 - 1;
+        }
+        for (int size = 512; size <= 4096; size <<= 1) {
+            Spectrogram spectrogram = new Spectrogram(size, size / 2, FftWindow.HANN);
+            spectrogram.prepare(sampleRate);
+            spectrogram.process(audio, 0, audio.length);
+            long start = System.nanoTime();
+            spectrogram.process(audio, 0, audio.length);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("Spectrogram %5d  real-time factor %.5f", size, seconds / 60));
+        }
+    }
+
+    private static void transform(Fft fft, float[] input, float[] re, float[] im) {
+        System.arraycopy(input, 0, re, 0, input.length);
+        Arrays.fill(im, 0f);
+        fft.forward(re, im);
+    }
+}
@@ -0,0 +1,145 @@
+package call.master.audiohusbandwife;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link Fft} against a naive DFT and the {@link Spectrogram} / {@link BandEnergyAnalyzer}
+ * built on top of it.
+ */
+public class FftTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    @Test
+    public void forwardMatchesNaiveDft() throws Exception {
+        Random random = new Random(7);
+        for (int size = 2; size <= 1024; size <<= 1) {
+            float[] re = new float[size];
+            float[] im = new float[size];
+            for (int i = 0; i < size; i++) {
+                re[i] = random.nextFloat() * 2 - 1;
+                im[i] = random.nextFloat() * 2 - 1;
+            }
+            double[][] expected = naiveDft(re, im);
+
+            new Fft(size).forward(re, im);
+
+            double tolerance = 1e-5 * size;
+            for (int k = 0; k < size; k++) {
+                assertEquals("re size " + size + " bin " + k, expected[0][k], re[k], tolerance);
+                assertEquals("im size " + size + " bin " + k, expected[1][k], im[k], tolerance);
+            }
+        }
+    }
+
+    @Test
+    public void inverseRestoresInput() throws Exception {
+        Random random = new Random(3);
+        float[] original = new float[512];
+        for (int i = 0; i < original.length; i++) {
+            original[i] = random.nextFloat() * 2 - 1;
+        }
+        float[] re = original.clone();
+        float[] im = new float[512];
+        Fft fft = new Fft(512);
+        fft.forward(re, im);
+        fft.inverse(re, im);
+
+        assertArrayEquals(original, re, 1e-5f);
+        assertArrayEquals(new float[512], im, 1e-5f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPowerOfTwo() throws Exception {
+        new Fft(1000);
+    }
+
+    @Test
+    public void windowsHaveExpectedShape() throws Exception {
+        float[] hann = FftWindow.HANN.coefficients(8);
+        float[] hamming = FftWindow.HAMMING.coefficients(8);
+
+        assertEquals(0f, hann[0], 1e-6f);
+        assertEquals(1f, hann[4], 1e-6f);
+        assertEquals(0.08f, hamming[0], 1e-6f);
+        assertEquals(1f, hamming[4], 1e-6f);
+        // periodic Hann overlap-adds to one at 50% overlap
+        for (int i = 0; i < 4; i++) {
+            assertEquals(1f, hann[i] + hann[i + 4], 1e-6f);
+        }
+    }
+
+    @Test
+    public void spectrogramFindsToneAtFullScale() throws Exception {
+        final ArrayList<float[]> frames = new ArrayList<float[]>();
+        final ArrayList<Long> times = new ArrayList<Long>();
+        Spectrogram spectrogram = new Spectrogram(1024, 256, FftWindow.HANN)
+                .setOnSpectrumListener(new Spectrogram.OnSpectrumListener() {
+                    @Override
+                    public void onSpectrum(float[] magnitudes, int bins, float binHz, long timeMillis) {
+                        assertEquals(SAMPLE_RATE / 1024f, binHz, 1e-4f);
+                        frames.add(magnitudes.clone());
+                        times.add(timeMillis);
+                    }
+                });
+        spectrogram.prepare(SAMPLE_RATE);
+
+        // exactly on bin 64
+        float frequency = 64 * SAMPLE_RATE / 1024f;
+        float[] tone = AudioProcessorTest.sine(SAMPLE_RATE, frequency, 1f);
+        float[] copy = tone.clone();
+        AudioProcessorTest.runBlockwise(spectrogram, copy);
+
+        assertArrayEquals(tone, copy, 0f);
+        assertEquals(1 + (SAMPLE_RATE - 1024) / 256, frames.size());
+        assertEquals(Long.valueOf(0), times.get(0));
+        assertEquals(Long.valueOf(256 * 1000 / SAMPLE_RATE), times.get(1));
+
+        float[] spectrum = frames.get(frames.size() - 1);
+        int peak = 0;
+        for (int k = 1; k < spectrum.length; k++) {
+            if (spectrum[k] > spectrum[peak]) {
+                peak = k;
+            }
+        }
+        assertEquals(64, peak);
+        assertEquals(1f, spectrum[64], 1e-3f);
+    }
+
+    @Test
+    public void bandAnalyzerDetectsLowBeat() throws Exception {
+        BandEnergyAnalyzer analyzer = new BandEnergyAnalyzer();
+        Spectrogram spectrogram = new Spectrogram(512, 512, FftWindow.HANN)
+                .setOnSpectrumListener(analyzer);
+        spectrogram.prepare(SAMPLE_RATE);
+
+        float[] steady = AudioProcessorTest.sine(SAMPLE_RATE * 2, 1000, 0.2f);
+        spectrogram.process(steady, 0, steady.length);
+        assertTrue(analyzer.getAverageBandEnergy(BandEnergyAnalyzer.BAND_MID) > 0);
+        assertFalse(analyzer.isBeat(BandEnergyAnalyzer.BAND_LOW));
+
+        float[] kick = AudioProcessorTest.sine(512, 100, 0.8f);
+        spectrogram.process(kick, 0, kick.length);
+        assertTrue(analyzer.isBeat(BandEnergyAnalyzer.BAND_LOW));
+    }
+
+    private static double[][] naiveDft(float[] re, float[] im) {
+        int n = re.length;
+        double[][] out = new double[2][n];
+        for (int k = 0; k < n; k++) {
+            for (int t = 0; t < n; t++) {
+                double angle = -2 * Math.PI * k * t / n;
+                double cos = Math.cos(angle);
+                double sin = Math.sin(angle);
+                out[0][k] += re[t] * cos - im[t] * sin;
+                out[1][k] += re[t] * sin + im[t] * cos;
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,42 @@
+package call.master.audiohusbandwife;
+
+import java.util.Random;
+
+/**
+ * Prints the throughput of {@link LoudnessMeter} over ten minutes of noise at common sample rates,
+ * in samples per second and as a multiple of real time. Not a unit test, run its main() from the
+ * IDE.
+ */
+public class LoudnessMeterBenchmark {
+
+    private static final int SECONDS = 600;
+    private static final int BLOCK = 1024;
+
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        for (int sampleRate : new int[]{16000, 44100, 48000}) {
+            float[] audio = new float[sampleRate * SECONDS];
+            for (int i = 0; i < audio.length; i++) {
+                audio[i] = (random.nextFloat() * 2 - 1) * 0.3f;
+            }
+            LoudnessMeter meter = new LoudnessMeter();
+            meter.prepare(sampleRate);
+            // warm up the JIT before measuring
+            run(meter, audio);
+
+            meter.reset();
+            long start = System.nanoTime();
+            run(meter, audio);
+            double loudness = meter.getIntegratedLoudness();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("%5d Hz  %7.1f Msamples/s  %6.0fx real time  (%.1f LUFS)",
+                    sampleRate, audio.length / seconds / 1e6, SECONDS / seconds, loudness));
+        }
+    }
+
+    private static void run(LoudnessMeter meter, float[] audio) {
+        for (int offset = 0; offset < audio.length; offset += BLOCK) {
+            meter.process(audio, offset, Math.min(BLOCK, audio.length - offset));
+        }
+    }
+}
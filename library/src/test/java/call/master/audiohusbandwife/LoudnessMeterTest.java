@@ -0,0 +1,128 @@
+package call.master.audiohusbandwife;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link LoudnessMeter} against reference signals in the spirit of EBU Tech 3341, and the
+ * {@link LoudnessMetadata} sidecar.
+ */
+public class LoudnessMeterTest {
+
+    private static final int BLOCK = 512;
+
+    private static float[] sine(int sampleRate, float seconds, float frequency, float amplitude) {
+        float[] samples = new float[(int) (sampleRate * seconds)];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (float) (amplitude * Math.sin(2 * Math.PI * frequency * i / sampleRate));
+        }
+        return samples;
+    }
+
+    private static double measure(int sampleRate, float[]... parts) {
+        LoudnessMeter meter = new LoudnessMeter();
+        meter.prepare(sampleRate);
+        for (float[] part : parts) {
+            for (int offset = 0; offset < part.length; offset += BLOCK) {
+                meter.process(part, offset, Math.min(BLOCK, part.length - offset));
+            }
+        }
+        return meter.getIntegratedLoudness();
+    }
+
+    /***
+     * Peak amplitude of a mono sine reading {@code lufs}.
+     ****/
+    private static float amplitudeFor(double lufs) {
+        return (float) Math.pow(10, (lufs + 3.0103) / 20);
+    }
+
+    @Test
+    public void referenceToneReadsItsLevelAtAnyRate() throws Exception {
+        for (int sampleRate : new int[]{16000, 44100, 48000}) {
+            float[] tone = sine(sampleRate, 5, 997, amplitudeFor(-23));
+            assertEquals("at " + sampleRate + " Hz", -23, measure(sampleRate, tone), 0.1);
+        }
+    }
+
+    @Test
+    public void relativeGateDropsQuietPassages() throws Exception {
+        float[] quiet = sine(48000, 2, 997, amplitudeFor(-36));
+        float[] loud = sine(48000, 30, 997, amplitudeFor(-23));
+        assertEquals(-23, measure(48000, quiet, loud, quiet), 0.1);
+    }
+
+    @Test
+    public void absoluteGateDropsSilence() throws Exception {
+        float[] loud = sine(48000, 30, 997, amplitudeFor(-20));
+        float[] silence = new float[48000 * 5];
+        assertEquals(-20, measure(48000, silence, loud, silence), 0.1);
+
+        assertTrue(Double.isInfinite(measure(48000, silence)));
+        assertTrue(Double.isInfinite(measure(48000, sine(48000, 5, 997, amplitudeFor(-75)))));
+        // shorter than one block
+        assertTrue(Double.isInfinite(measure(48000, sine(48000, 0.3f, 997, 0.5f))));
+    }
+
+    @Test
+    public void kWeightingFavorsPresenceAndIgnoresRumble() throws Exception {
+        double mid = measure(48000, sine(48000, 3, 997, 0.1f));
+        double high = measure(48000, sine(48000, 3, 10000, 0.1f));
+        double low = measure(48000, sine(48000, 3, 20, 0.1f));
+        // the shelf adds about 4 dB up high, of which 0.7 dB are already there at 1 kHz
+        assertEquals(3.3, high - mid, 0.2);
+        assertTrue(low - mid < -10);
+    }
+
+    @Test
+    public void momentaryFollowsTheLastBlock() throws Exception {
+        LoudnessMeter meter = new LoudnessMeter();
+        meter.prepare(16000);
+        assertTrue(Double.isInfinite(meter.getMomentaryLoudness()));
+        float[] loud = sine(16000, 2, 997, amplitudeFor(-14));
+        float[] quiet = sine(16000, 2, 997, amplitudeFor(-30));
+        meter.process(loud, 0, loud.length);
+        assertEquals(-14, meter.getMomentaryLoudness(), 0.1);
+        meter.process(quiet, 0, quiet.length);
+        assertEquals(-30, meter.getMomentaryLoudness(), 0.1);
+        assertEquals(amplitudeFor(-14), meter.getSamplePeak(), 1e-3);
+    }
+
+    @Test
+    public void metadataGainHonorsTargetAndCeiling() throws Exception {
+        LoudnessMetadata quiet = new LoudnessMetadata(-30f, 0.1f);
+        assertEquals(Math.pow(10, 14 / 20.0), quiet.getGain(-16f, -1f), 1e-3);
+
+        // +14 dB would push a 0.5 peak far above -1 dBFS
+        LoudnessMetadata peaky = new LoudnessMetadata(-30f, 0.5f);
+        assertEquals(Math.pow(10, -1 / 20.0) / 0.5, peaky.getGain(-16f, -1f), 1e-3);
+
+        LoudnessMetadata loud = new LoudnessMetadata(-8f, 1f);
+        assertEquals(Math.pow(10, -8 / 20.0), loud.getGain(-16f, -1f), 1e-3);
+
+        assertEquals(1f, new LoudnessMetadata(Float.NEGATIVE_INFINITY, 0f).getGain(), 0f);
+    }
+
+    @Test
+    public void metadataSidecarRoundTrip() throws Exception {
+        File audio = File.createTempFile("note", ".wav");
+        File sidecar = LoudnessMetadata.sidecarOf(audio);
+        try {
+            assertNull(LoudnessMetadata.read(audio));
+            new LoudnessMetadata(-21.5f, 0.75f).write(audio);
+            LoudnessMetadata read = LoudnessMetadata.read(audio);
+            assertEquals(-21.5f, read.getIntegratedLoudness(), 0f);
+            assertEquals(0.75f, read.getSamplePeak(), 0f);
+
+            // the audio was rewritten after it was measured
+            assertTrue(audio.setLastModified(sidecar.lastModified() + 10000));
+            assertNull(LoudnessMetadata.read(audio));
+        } finally {
+            sidecar.delete();
+            audio.delete();
+        }
+    }
+}
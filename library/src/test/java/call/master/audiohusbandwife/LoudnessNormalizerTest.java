@@ -0,0 +1,70 @@
+package call.master.audiohusbandwife;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the two passes of {@link LoudnessNormalizer}, measuring its output with a
+ * {@link LoudnessMeter}.
+ */
+public class LoudnessNormalizerTest {
+
+    private static float[] sine(int length, int sampleRate, float frequency, float amplitude) {
+        float[] samples = new float[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (float) (amplitude * Math.sin(2 * Math.PI * frequency * i / sampleRate));
+        }
+        return samples;
+    }
+
+    @Test
+    public void reachesTarget() throws Exception {
+        float[] quiet = sine(16000 * 3, 16000, 500, 0.05f);
+        LoudnessNormalizer normalizer = new LoudnessNormalizer(-18f, -1f);
+        normalizer.prepare(16000);
+        normalizer.process(quiet, 0, quiet.length);
+        normalizer.finishAnalysis();
+        assertTrue(normalizer.isAnalyzed());
+
+        normalizer.process(quiet, 0, quiet.length);
+        LoudnessMeter meter = new LoudnessMeter();
+        meter.prepare(16000);
+        meter.process(quiet, 0, quiet.length);
+        assertEquals(-18, meter.getIntegratedLoudness(), 0.05);
+        assertEquals(-18, normalizer.getOutputMetadata().getIntegratedLoudness(), 0.05);
+    }
+
+    @Test
+    public void defaultTargetNeedsNoPlaybackGain() throws Exception {
+        float[] quiet = sine(16000 * 3, 16000, 500, 0.05f);
+        LoudnessNormalizer normalizer = new LoudnessNormalizer();
+        normalizer.prepare(16000);
+        normalizer.process(quiet, 0, quiet.length);
+        normalizer.finishAnalysis();
+
+        assertEquals(1f, normalizer.getOutputMetadata().getGain(), 0.01f);
+    }
+
+    @Test
+    public void ignoresSilenceAndRespectsCeiling() throws Exception {
+        float[] speech = new float[16000 * 4];
+        // tone, then silence, then a loud click
+        float[] tone = sine(19200, 16000, 300, 0.1f);
+        System.arraycopy(tone, 0, speech, 0, tone.length);
+        speech[16000 * 3] = 0.3f;
+
+        LoudnessNormalizer normalizer = new LoudnessNormalizer(-6f, -1f);
+        normalizer.prepare(16000);
+        normalizer.process(speech, 0, speech.length);
+        float gain = normalizer.finishAnalysis();
+
+        // the silence is gated out, only the blocks straddling the end of the tone pull it down
+        LoudnessMeter meter = new LoudnessMeter();
+        meter.prepare(16000);
+        meter.process(tone, 0, tone.length);
+        assertEquals(meter.getIntegratedLoudness(), normalizer.getMeasuredLoudness(), 1.0);
+        // the click would clip at the gain the target asks for
+        assertEquals(Math.pow(10, -1 / 20.0) / 0.3, gain, 1e-4);
+    }
+}
@@ -0,0 +1,140 @@
+package call.master.audiohusbandwife;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives {@link PlaybackClock} with a fake monotonic clock.
+ */
+public class PlaybackClockTest {
+
+    private static class FakeTimeSource implements PlaybackClock.TimeSource {
+        long mNanos = 5000000000L;
+
+        @Override
+        public long nanoTime() {
+            return mNanos;
+        }
+
+        void advanceMillis(double millis) {
+            mNanos += (long) (millis * 1000000);
+        }
+    }
+
+    private FakeTimeSource mTime;
+    private PlaybackClock mClock;
+
+    @Before
+    public void setUp() throws Exception {
+        mTime = new FakeTimeSource();
+        mClock = new PlaybackClock(mTime);
+    }
+
+    @Test
+    public void interpolatesBetweenTimestamps() throws Exception {
+        assertFalse(mClock.isAnchored());
+        assertEquals(0, mClock.getTimeUs());
+
+        // the player played media time 1 s ten milliseconds ago
+        mClock.onTimestamp(1000000, mTime.mNanos - 10000000, 1f);
+        assertEquals(1010000, mClock.getTimeUs());
+        mTime.advanceMillis(0.25);
+        assertEquals(1010250, mClock.getTimeUs());
+
+        mClock.onTimestamp(2000000, mTime.mNanos, 1.5f);
+        mTime.advanceMillis(100);
+        assertEquals(2150000, mClock.getTimeUs());
+    }
+
+    @Test
+    public void pauseFreezesAndResumeContinues() throws Exception {
+        mClock.onTimestamp(0, mTime.mNanos, 1f);
+        mTime.advanceMillis(500);
+        mClock.setRate(0f);
+        mTime.advanceMillis(3000);
+        assertEquals(500000, mClock.getTimeUs());
+
+        mClock.setRate(1f);
+        mTime.advanceMillis(20);
+        assertEquals(520000, mClock.getTimeUs());
+    }
+
+    @Test
+    public void lateAnchorNeverMovesBackwards() throws Exception {
+        mClock.onTimestamp(0, mTime.mNanos, 1f);
+        mTime.advanceMillis(1000);
+        assertEquals(1000000, mClock.getTimeUs());
+
+        // the player says we are 30 ms behind the extrapolation
+        mClock.onTimestamp(970000, mTime.mNanos, 1f);
+        assertEquals(1000000, mClock.getTimeUs());
+        mTime.advanceMillis(10);
+        assertEquals(1000000, mClock.getTimeUs());
+        mTime.advanceMillis(40);
+        assertEquals(1020000, mClock.getTimeUs());
+    }
+
+    @Test
+    public void largeJumpsAndSeeksApplyAtOnce() throws Exception {
+        mClock.onTimestamp(10000000, mTime.mNanos, 1f);
+        mTime.advanceMillis(100);
+        mClock.getTimeUs();
+
+        mClock.onTimestamp(2000000, mTime.mNanos, 1f);
+        assertEquals(2000000, mClock.getTimeUs());
+
+        mClock.seekTo(1950000);
+        assertEquals(1950000, mClock.getTimeUs());
+
+        mClock.onPosition(8000000, 1f);
+        assertEquals(8000000, mClock.getTimeUs());
+    }
+
+    @Test
+    public void smoothsJitteryPositions() throws Exception {
+        Random random = new Random(3);
+        long trueTimeUs = 0;
+        long previous = Long.MIN_VALUE;
+        double worstRaw = 0;
+        double worstLate = 0;
+        double squaredError = 0;
+        int count = 0;
+        for (int i = 0; i < 600; i++) {
+            // positions are read every 50 ms and off by up to +/- 40 ms
+            long jitter = (long) ((random.nextDouble() * 2 - 1) * 40000);
+            mClock.onPosition(trueTimeUs + jitter, 1f);
+            worstRaw = Math.max(worstRaw, Math.abs(jitter));
+
+            for (int j = 0; j < 5; j++) {
+                long time = mClock.getTimeUs();
+                assertTrue(time >= previous);
+                previous = time;
+                if (i > 100) {
+                    worstLate = Math.max(worstLate, Math.abs(time - trueTimeUs));
+                    squaredError += (double) (time - trueTimeUs) * (time - trueTimeUs);
+                    count++;
+                }
+                mTime.advanceMillis(10);
+                trueTimeUs += 10000;
+            }
+        }
+        assertTrue(worstRaw > 35000);
+        double rmsError = Math.sqrt(squaredError / count);
+        assertTrue("rms error " + rmsError, rmsError < 8000);
+        assertTrue("worst error " + worstLate, worstLate < 25000);
+    }
+
+    @Test
+    public void followsRateChangeOfSampledPositions() throws Exception {
+        mClock.onPosition(0, 1f);
+        mTime.advanceMillis(1000);
+        mClock.onPosition(1000000, 2f);
+        mTime.advanceMillis(500);
+        assertEquals(2000000, mClock.getTimeUs());
+        assertEquals(2f, mClock.getRate(), 0f);
+    }
+}
@@ -0,0 +1,80 @@
+package call.master.audiohusbandwife;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the {@link Resampler} used by the transcoding jobs.
+ */
+public class ResamplerTest {
+
+    private static final int BLOCK = 1000;
+
+    private static float[] sine(int length, int sampleRate, float frequency, float amplitude) {
+        float[] samples = new float[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (float) (amplitude * Math.sin(2 * Math.PI * frequency * i / sampleRate));
+        }
+        return samples;
+    }
+
+    private static float[] resample(Resampler resampler, float[] input) {
+        float[] output = new float[resampler.getMaxOutputLength(input.length) + 64];
+        int written = 0;
+        for (int offset = 0; offset < input.length; offset += BLOCK) {
+            written += resampler.process(input, offset, Math.min(BLOCK, input.length - offset), output, written);
+        }
+        written += resampler.flush(output, written);
+        float[] result = new float[written];
+        System.arraycopy(output, 0, result, 0, written);
+        return result;
+    }
+
+    private static double rmsDb(float[] samples, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += samples[i] * samples[i];
+        }
+        return 10 * Math.log10(sum / (to - from));
+    }
+
+    @Test
+    public void downsamplesToneWithoutDelayOrLoss() throws Exception {
+        float[] input = sine(48000, 48000, 1000, 0.5f);
+        float[] output = resample(new Resampler(48000, 16000), input);
+        assertEquals(16000, output.length, 1);
+
+        float[] expected = sine(output.length, 16000, 1000, 0.5f);
+        double signal = 0, error = 0;
+        for (int i = 1000; i < output.length - 1000; i++) {
+            double e = output[i] - expected[i];
+            signal += expected[i] * expected[i];
+            error += e * e;
+        }
+        assertTrue(10 * Math.log10(signal / error) > 60);
+    }
+
+    @Test
+    public void upsamplesArbitraryRatio() throws Exception {
+        float[] input = sine(16000, 16000, 440, 0.8f);
+        float[] output = resample(new Resampler(16000, 44100), input);
+        assertEquals(44100, output.length, 1);
+
+        float[] expected = sine(output.length, 44100, 440, 0.8f);
+        double signal = 0, error = 0;
+        for (int i = 2000; i < output.length - 2000; i++) {
+            double e = output[i] - expected[i];
+            signal += expected[i] * expected[i];
+            error += e * e;
+        }
+        assertTrue(10 * Math.log10(signal / error) > 60);
+    }
+
+    @Test
+    public void rejectsContentAboveOutputNyquist() throws Exception {
+        // 12 kHz would alias to 4 kHz at 16 kHz
+        float[] output = resample(new Resampler(48000, 16000), sine(48000, 48000, 12000, 0.9f));
+        assertTrue(rmsDb(output, 1000, output.length - 1000) < -70);
+    }
+}